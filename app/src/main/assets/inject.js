@@ -5,9 +5,26 @@
   }
   const bridgeFunction = window['CG_BRIDGE']['evalMethod'].bind(window['CG_BRIDGE'])
 
+  // native answers within a few frames, a callback still waiting after this never gets its answer,
+  // e.g. the view was rebuilt between the call and the answer
+  const CALLBACK_TIMEOUT_MS = 10000
+  const SWEEP_INTERVAL_MS = 5000
+
+  // id -> { callback, onExpired, deadline }
   const callbackMap = new Map()
+  // elements are held weakly so detached trees the page dropped can be collected; ids of collected
+  // elements are removed by the FinalizationRegistry, and by sweep() as its callbacks are not guaranteed
+  const hasWeakRef = typeof WeakRef === 'function'
   const id2eleMap = new Map()
-  const ele2IdMap = new Map()
+  const ele2IdMap = new WeakMap()
+  const eleFinalizer = hasWeakRef && typeof FinalizationRegistry === 'function'
+    ? new FinalizationRegistry((id) => {
+      const ref = id2eleMap.get(id)
+      if (ref && !ref.deref()) {
+        id2eleMap.delete(id)
+      }
+    })
+    : null
   const newId = (function () {
     let count = 0;
     return function () {
@@ -25,32 +42,84 @@
     }
     const id = newId()
     ele2IdMap.set(ele, id)
-    id2eleMap.set(id, ele)
+    // older WebViews without WeakRef keep the element until CG_TRIM_MEMORY prunes it
+    id2eleMap.set(id, hasWeakRef ? new WeakRef(ele) : { deref: () => ele })
+    if (eleFinalizer) {
+      eleFinalizer.register(ele, id)
+    }
+    scheduleSweep()
     return id
   }
 
   const getEleById = (id) => {
-    return id2eleMap.get(id)
+    const ref = id2eleMap.get(id)
+    return ref ? ref.deref() : undefined
+  }
+
+  let expiredCallbacks = 0
+  let lastRegistryStats = ''
+  let sweepTimer = 0
+
+  // 'elements,callbacks,expired' whenever it changed, expired counts since the last report
+  const reportRegistryStats = () => {
+    const stats = id2eleMap.size + ',' + callbackMap.size
+    if (stats === lastRegistryStats && expiredCallbacks === 0) {
+      return
+    }
+    lastRegistryStats = stats
+    justEvalBridgeMethod('registryStats', stats + ',' + expiredCallbacks)
+    expiredCallbacks = 0
+  }
+
+  const sweep = () => {
+    const now = performance.now()
+    for (const [id, entry] of callbackMap) {
+      if (entry.deadline <= now) {
+        callbackMap.delete(id)
+        expiredCallbacks++
+        try {
+          entry.onExpired?.()
+        } catch (e) {
+          console.error(e)
+        }
+      }
+    }
+    for (const [id, ref] of id2eleMap) {
+      if (!ref.deref()) {
+        id2eleMap.delete(id)
+      }
+    }
+    reportRegistryStats()
+    if (callbackMap.size === 0 && id2eleMap.size === 0) {
+      clearInterval(sweepTimer)
+      sweepTimer = 0
+    }
   }
 
+  const scheduleSweep = () => {
+    if (!sweepTimer) {
+      sweepTimer = setInterval(sweep, SWEEP_INTERVAL_MS)
+    }
+  }
 
   window.CG_CALLBACKS = callbackMap
   window.CG_EVAL_CALLBACK = function (callbackId, result) {
-    const callback = callbackMap.get(callbackId)
-    if (typeof callback === 'function') {
-      callback(result)
-    }
+    const entry = callbackMap.get(callbackId)
     callbackMap.delete(callbackId)
+    if (entry && typeof entry.callback === 'function') {
+      entry.callback(result)
+    }
   }
   // params should be string
-  const evalBridgeMethodWithCallback = function (method, params, callback) {
+  const evalBridgeMethodWithCallback = function (method, params, callback, onExpired) {
     const callbackId = newId()
-    callbackMap.set(callbackId, callback)
+    callbackMap.set(callbackId, { callback, onExpired, deadline: performance.now() + CALLBACK_TIMEOUT_MS })
+    scheduleSweep()
     bridgeFunction(method, params || '', callbackId)
   }
   const evalBridgeMethodPromise = function (method, params) {
     return new Promise((resolve, reject) => {
-      evalBridgeMethodWithCallback(method, params, resolve)
+      evalBridgeMethodWithCallback(method, params, resolve, () => reject(new Error(method + ' timed out')))
     })
   }
   const justEvalBridgeMethod = function (method, params) {
@@ -66,31 +135,17 @@
 
   Object.defineProperty(document, 'exitPointerLock', {
     value: () => {
-      evalBridgeMethodPromise('exitPointerLock').then(() => { })
+      evalBridgeMethodPromise('exitPointerLock').then(() => { }, () => { })
     },
     writable: true
   })
 
-  const mouseMoveMap = new Map()
-  const mousemoveDocumentListener = new Set()
-  const htmlElementAddEventListener = HTMLElement.prototype.addEventListener
-  HTMLElement.prototype.addEventListener = function (...args) {
-    if (args[0] === 'mousemove') {
-      const callback = args[1]
-      mouseMoveMap.set(this, callback)
-    }
-    return htmlElementAddEventListener.apply(this, args)
-  }
-
   const addEventListener = document.addEventListener
   document.addEventListener = function (...args) {
     if (args[0] === 'pointerlockchange') {
       pointerlockchangeListener.add(args[1])
       return
     }
-    if (args[0] === 'mousemove' && typeof args[1] === 'function') {
-      mousemoveDocumentListener.add(args[1])
-    }
     return addEventListener.apply(document, args)
   }
 
@@ -111,6 +166,10 @@
       const ele = getEleById(eleId)
       lockState.isLocked = hasCapture
       lockState.lockElement = hasCapture ? ele : null
+      if (!hasCapture) {
+        // releases after the lock arrive as native events
+        heldButtons = 0
+      }
       for (const listener of pointerlockchangeListener) {
         listener()
       }
@@ -120,27 +179,448 @@
 
   }
 
-  window.EVAL_MOVEMENT_CB = (x, y) => {
+  // one event per native delivery; the samples it was coalesced from are only turned into events when
+  // the page asks for them
+  const MOVEMENT_SAMPLES = Symbol('samples')
+  // buttons held while locked, for the buttons field of synthetic events; native presses keep it in
+  // step as well as the ones of EVAL_POINTER_CB
+  let heldButtons = 0
+  const trackNativeButtons = (e) => {
+    if (e.isTrusted && lockState.isLocked) {
+      heldButtons = e.buttons
+    }
+  }
+  window.addEventListener('mousedown', trackNativeButtons, true)
+  window.addEventListener('mouseup', trackNativeButtons, true)
+  const movementInit = (x, y) => ({
+    bubbles: true,
+    cancelable: true,
+    composed: true,
+    view: window,
+    buttons: heldButtons,
+    movementX: x,
+    movementY: y
+  })
+
+  const coalescedEvents = (event, Type) => {
+    const samples = event[MOVEMENT_SAMPLES]
+    if (!samples || samples.length <= 2) {
+      return [event]
+    }
+    const events = []
+    for (let i = 0; i + 1 < samples.length; i += 2) {
+      events.push(new Type(samples[i], samples[i + 1]))
+    }
+    return events
+  }
+
+  // pages read coalesced samples from pointermove, the mousemove after it keeps them for older code
+  class PointerMovementEvent extends PointerEvent {
+    constructor(x, y, samples) {
+      super('pointermove', Object.assign(movementInit(x, y), {
+        pointerId: 1,
+        pointerType: 'mouse',
+        isPrimary: true,
+        // no button changed with this event
+        button: -1,
+        pressure: heldButtons ? 0.5 : 0
+      }))
+      this[MOVEMENT_SAMPLES] = samples
+    }
+
+    getCoalescedEvents() {
+      return coalescedEvents(this, PointerMovementEvent)
+    }
+  }
+
+  class MovementEvent extends MouseEvent {
+    constructor(x, y, samples) {
+      super('mousemove', movementInit(x, y))
+      this[MOVEMENT_SAMPLES] = samples
+    }
+
+    getCoalescedEvents() {
+      return coalescedEvents(this, MovementEvent)
+    }
+  }
+
+  const pointerTarget = () => {
+    const ele = lockState.lockElement
+    // bubbles up to the document listeners like a real locked mouse event
+    return ele && ele.isConnected ? ele : document
+  }
+
+  // pointermove then mousemove, in the order a real mouse delivers them
+  const dispatchMovement = (x, y, samples) => {
+    const target = pointerTarget()
+    target.dispatchEvent(new PointerMovementEvent(x, y, samples))
+    target.dispatchEvent(new MovementEvent(x, y, samples))
+  }
+
+  // samples: [x0, y0, x1, y1, ...] when the movement covers more than one native sample
+  window.EVAL_MOVEMENT_CB = (x, y, samples) => {
     try {
-      let eventEle = lockState.lockElement
-      const callback = mouseMoveMap.get(eventEle)
-      if (typeof callback === 'function') {
-        callback(new MouseEvent('mousemove', {
-          movementX: x,
-          movementY: y
-        }))
-      }
-      for (const cb of mousemoveDocumentListener) {
-        cb(new MouseEvent('mousemove', {
-          movementX: x,
-          movementY: y
-        }))
-      }
+      dispatchMovement(x, y, samples)
     } catch (e) {
       console.error(e)
     }
   }
 
+  // DOM button number to its bit in MouseEvent.buttons
+  const BUTTON_BITS = [1, 4, 2, 8, 16]
+  // buttons without a native event, from the gamepad or trackpad; a release completes the press with
+  // the click, auxclick and contextmenu the page would see from a real mouse
+  const pressButton = (button, down) => {
+    const bit = BUTTON_BITS[button] || 0
+    const wasHeld = (heldButtons & bit) !== 0
+    heldButtons = down ? heldButtons | bit : heldButtons & ~bit
+    const init = {
+      bubbles: true,
+      cancelable: true,
+      composed: true,
+      view: window,
+      button: button,
+      buttons: heldButtons
+    }
+    const target = pointerTarget()
+    target.dispatchEvent(new PointerEvent(down ? 'pointerdown' : 'pointerup',
+      Object.assign({ pointerId: 1, pointerType: 'mouse', isPrimary: true }, init)))
+    target.dispatchEvent(new MouseEvent(down ? 'mousedown' : 'mouseup', init))
+    if (down || !wasHeld) {
+      return
+    }
+    target.dispatchEvent(new PointerEvent(button === 0 ? 'click' : 'auxclick',
+      Object.assign({ pointerId: 1, pointerType: 'mouse', isPrimary: true, detail: 1 }, init)))
+    if (button === 2) {
+      target.dispatchEvent(new PointerEvent('contextmenu',
+        Object.assign({ pointerId: 1, pointerType: 'mouse', isPrimary: true }, init)))
+    }
+  }
+
+  const scrollWheel = (x, y) => {
+    pointerTarget().dispatchEvent(new WheelEvent('wheel', {
+      bubbles: true,
+      cancelable: true,
+      composed: true,
+      view: window,
+      buttons: heldButtons,
+      deltaX: x,
+      deltaY: y,
+      deltaMode: WheelEvent.DOM_DELTA_PIXEL
+    }))
+  }
+
+  // movement, buttons and wheel in the order they happened: [op, a, b, ...] with op 0 move x y,
+  // 1 button pressed, 2 wheel x y
+  window.EVAL_POINTER_CB = (ops) => {
+    for (let i = 0; i + 2 < ops.length; i += 3) {
+      try {
+        switch (ops[i]) {
+          case 0:
+            dispatchMovement(ops[i + 1], ops[i + 2])
+            break
+          case 1:
+            pressButton(ops[i + 1], ops[i + 2] === 1)
+            break
+          case 2:
+            scrollWheel(ops[i + 1], ops[i + 2])
+            break
+        }
+      } catch (e) {
+        console.error(e)
+      }
+    }
+  }
+
+  // ---- WebRTC stream stats ----
+  // installed on every page as connections are made before stats are turned on; held weakly and pruned
+  // once closed, so a reconnecting page with stats off does not keep its old connections alive
+  const peerConnections = new Set()
+  const pcFinalizer = hasWeakRef && typeof FinalizationRegistry === 'function'
+    ? new FinalizationRegistry((ref) => peerConnections.delete(ref))
+    : null
+  const NativeRTCPeerConnection = window.RTCPeerConnection
+  if (typeof NativeRTCPeerConnection === 'function') {
+    const TrackedRTCPeerConnection = function (...args) {
+      // new.target keeps the prototype of a page class extending RTCPeerConnection
+      const pc = Reflect.construct(NativeRTCPeerConnection, args, new.target || NativeRTCPeerConnection)
+      const ref = hasWeakRef ? new WeakRef(pc) : { deref: () => pc }
+      peerConnections.add(ref)
+      if (pcFinalizer) {
+        pcFinalizer.register(pc, ref)
+      }
+      // close() itself fires no state event, a connection closed that way goes with its WeakRef
+      const prune = () => {
+        if (pc.signalingState === 'closed' || pc.connectionState === 'closed') {
+          peerConnections.delete(ref)
+        }
+      }
+      pc.addEventListener('signalingstatechange', prune)
+      pc.addEventListener('connectionstatechange', prune)
+      return pc
+    }
+    TrackedRTCPeerConnection.prototype = NativeRTCPeerConnection.prototype
+    Object.setPrototypeOf(TrackedRTCPeerConnection, NativeRTCPeerConnection)
+    window.RTCPeerConnection = TrackedRTCPeerConnection
+    if (window.webkitRTCPeerConnection === NativeRTCPeerConnection) {
+      window.webkitRTCPeerConnection = TrackedRTCPeerConnection
+    }
+  }
+
+  let statsTimer = 0
+  let lastInbound = null
+
+  const num = (v, digits) => (typeof v === 'number' && isFinite(v)) ? v.toFixed(digits) : ''
+
+  const sampleStats = async () => {
+    let inbound = null
+    let rtt
+    for (const ref of peerConnections) {
+      const pc = ref.deref()
+      if (!pc || pc.signalingState === 'closed') {
+        peerConnections.delete(ref)
+        continue
+      }
+      const report = await pc.getStats()
+      report.forEach(stat => {
+        if (stat.type === 'inbound-rtp' && (stat.kind || stat.mediaType) === 'video') {
+          if (!inbound || (stat.bytesReceived || 0) > (inbound.bytesReceived || 0)) {
+            inbound = stat
+          }
+        } else if (stat.type === 'candidate-pair' && stat.nominated && stat.state === 'succeeded') {
+          if (typeof stat.currentRoundTripTime === 'number') {
+            rtt = stat.currentRoundTripTime * 1000
+          }
+        }
+      })
+    }
+    if (!inbound) {
+      return
+    }
+    // counters in inbound-rtp are cumulative, so report per-interval deltas
+    const prev = lastInbound && lastInbound.id === inbound.id ? lastInbound : null
+    lastInbound = inbound
+    let loss, fps, kbps
+    if (prev) {
+      const dt = inbound.timestamp - prev.timestamp
+      const lost = (inbound.packetsLost || 0) - (prev.packetsLost || 0)
+      const received = (inbound.packetsReceived || 0) - (prev.packetsReceived || 0)
+      if (lost + received > 0) {
+        loss = Math.max(0, lost) * 100 / (lost + received)
+      }
+      if (dt > 0) {
+        fps = typeof inbound.framesPerSecond === 'number'
+          ? inbound.framesPerSecond
+          : ((inbound.framesDecoded || 0) - (prev.framesDecoded || 0)) * 1000 / dt
+        kbps = ((inbound.bytesReceived || 0) - (prev.bytesReceived || 0)) * 8 / dt
+      }
+    }
+    const jitter = typeof inbound.jitter === 'number' ? inbound.jitter * 1000 : undefined
+    justEvalBridgeMethod('streamStats', [Date.now(), num(rtt, 1), num(jitter, 1), num(loss, 2), num(fps, 1), num(kbps, 0)].join(','))
+  }
+
+  let statsIntervalMs = 0
+  window.CG_SET_STATS_INTERVAL = (intervalMs) => {
+    intervalMs = intervalMs > 0 ? intervalMs : 0
+    if (intervalMs === statsIntervalMs) {
+      return
+    }
+    statsIntervalMs = intervalMs
+    if (statsTimer) {
+      clearInterval(statsTimer)
+      statsTimer = 0
+    }
+    lastInbound = null
+    if (intervalMs > 0) {
+      statsTimer = setInterval(() => {
+        sampleStats().catch(e => console.error(e))
+      }, intervalMs)
+    }
+  }
+
+  // ---- video frame pacing (requestVideoFrameCallback) ----
+  // upper bounds in ms, keep in sync with VideoFrameStats.BUCKET_BOUNDS; the last bucket is the overflow
+  const FRAME_BUCKETS = [4, 8, 12, 17, 20, 25, 34, 50, 67, 100, 200]
+  const frameStats = {
+    enabled: false,
+    // bumped whenever watching restarts, a callback chain of an older generation stops itself
+    generation: 0,
+    video: null,
+    timer: 0,
+    windowStart: 0,
+    lastPresentation: 0,
+    lastPresented: 0,
+    // droppedVideoFrames of the watched video at the last flush
+    lastDropped: -1,
+    frames: 0,
+    dropped: 0,
+    // gaps in presentedFrames: frames presented while no callback ran, e.g. on a busy main thread
+    missed: 0,
+    interval: new Array(FRAME_BUCKETS.length + 1).fill(0),
+    delay: new Array(FRAME_BUCKETS.length + 1).fill(0)
+  }
+
+  const frameBucketOf = (ms) => {
+    for (let i = 0; i < FRAME_BUCKETS.length; i++) {
+      if (ms <= FRAME_BUCKETS[i]) {
+        return i
+      }
+    }
+    return FRAME_BUCKETS.length
+  }
+
+  // the callback is bound to one element and generation, so a replaced <video> or a restart stops its chain
+  const watchVideoFrames = (video) => {
+    const generation = ++frameStats.generation
+    const onVideoFrame = (now, meta) => {
+      if (!frameStats.enabled || frameStats.video !== video || frameStats.generation !== generation) {
+        return
+      }
+      if (frameStats.lastPresentation) {
+        frameStats.interval[frameBucketOf(meta.presentationTime - frameStats.lastPresentation)]++
+      }
+      if (frameStats.lastPresented && meta.presentedFrames - frameStats.lastPresented > 1) {
+        frameStats.missed += meta.presentedFrames - frameStats.lastPresented - 1
+      }
+      // receiveTime is only set for WebRTC sources; processingDuration covers the decoder otherwise
+      if (typeof meta.receiveTime === 'number') {
+        frameStats.delay[frameBucketOf(meta.expectedDisplayTime - meta.receiveTime)]++
+      } else if (typeof meta.processingDuration === 'number') {
+        frameStats.delay[frameBucketOf(meta.processingDuration * 1000)]++
+      }
+      frameStats.lastPresentation = meta.presentationTime
+      frameStats.lastPresented = meta.presentedFrames
+      frameStats.frames++
+      video.requestVideoFrameCallback(onVideoFrame)
+    }
+    video.requestVideoFrameCallback(onVideoFrame)
+  }
+
+  const findStreamVideo = () => {
+    let best = null
+    for (const video of document.querySelectorAll('video')) {
+      if (typeof video.requestVideoFrameCallback !== 'function' || video.readyState < 2) {
+        continue
+      }
+      if (!best || video.videoWidth * video.videoHeight > best.videoWidth * best.videoHeight) {
+        best = video
+      }
+    }
+    return best
+  }
+
+  const flushFrameStats = () => {
+    if (!frameStats.video || !frameStats.video.isConnected) {
+      const video = findStreamVideo()
+      if (video !== frameStats.video) {
+        frameStats.video = video
+        frameStats.lastPresentation = 0
+        frameStats.lastPresented = 0
+        frameStats.lastDropped = -1
+        if (video) {
+          watchVideoFrames(video)
+        }
+      }
+    }
+    // frames the player decoded but did not show, the callback gaps above only say the page missed them
+    const video = frameStats.video
+    if (video && typeof video.getVideoPlaybackQuality === 'function') {
+      const dropped = video.getVideoPlaybackQuality().droppedVideoFrames
+      if (frameStats.lastDropped >= 0 && dropped > frameStats.lastDropped) {
+        frameStats.dropped += dropped - frameStats.lastDropped
+      }
+      frameStats.lastDropped = dropped
+    }
+    const now = performance.now()
+    if (frameStats.frames > 0) {
+      justEvalBridgeMethod('videoFrameStats', JSON.stringify({
+        n: frameStats.frames,
+        drop: frameStats.dropped,
+        missed: frameStats.missed,
+        fps: frameStats.frames * 1000 / (now - frameStats.windowStart),
+        i: frameStats.interval,
+        d: frameStats.delay
+      }))
+      frameStats.frames = 0
+      frameStats.dropped = 0
+      frameStats.missed = 0
+      frameStats.interval.fill(0)
+      frameStats.delay.fill(0)
+    }
+    frameStats.windowStart = now
+  }
+
+  window.CG_SET_VIDEO_FRAME_STATS = (enabled) => {
+    if (!!enabled === frameStats.enabled) {
+      return
+    }
+    frameStats.enabled = !!enabled
+    frameStats.generation++
+    if (frameStats.timer) {
+      clearInterval(frameStats.timer)
+      frameStats.timer = 0
+    }
+    frameStats.video = null
+    if (frameStats.enabled) {
+      frameStats.windowStart = performance.now()
+      frameStats.timer = setInterval(flushFrameStats, 1000)
+    }
+  }
+
+  // ---- render scale ----
+  let viewportWidth = 0
+  // undefined: not touched yet, null: the page had no viewport meta
+  let originalViewport
+  const applyViewport = () => {
+    let meta = document.querySelector('meta[name="viewport"]')
+    if (!viewportWidth) {
+      if (meta && originalViewport !== undefined) {
+        if (originalViewport === null) {
+          meta.remove()
+        } else {
+          meta.content = originalViewport
+        }
+        originalViewport = undefined
+      }
+      return
+    }
+    if (!meta) {
+      if (!document.head) {
+        return
+      }
+      meta = document.createElement('meta')
+      meta.name = 'viewport'
+      document.head.appendChild(meta)
+      if (originalViewport === undefined) {
+        originalViewport = null
+      }
+    } else if (originalViewport === undefined) {
+      originalViewport = meta.content
+    }
+    meta.content = 'width=' + viewportWidth
+  }
+  window.CG_SET_VIEWPORT_WIDTH = (width) => {
+    viewportWidth = width > 0 ? width : 0
+    applyViewport()
+  }
+  // the head usually does not exist yet when inject.js runs at page start
+  document.addEventListener('DOMContentLoaded', applyViewport)
+
+  // forwarded from ComponentCallbacks2.onTrimMemory, the page may listen for 'cgtrimmemory' to drop its own caches
+  window.CG_TRIM_MEMORY = (level) => {
+    for (const [id, ref] of id2eleMap) {
+      const ele = ref.deref()
+      if (!ele) {
+        id2eleMap.delete(id)
+      } else if (!ele.isConnected && ele !== lockState.lockElement) {
+        id2eleMap.delete(id)
+        ele2IdMap.delete(ele)
+      }
+    }
+    reportRegistryStats()
+    window.dispatchEvent(new CustomEvent('cgtrimmemory', { detail: { level } }))
+  }
+
   console.log('inject.js loaded')
 
 })()
\ No newline at end of file
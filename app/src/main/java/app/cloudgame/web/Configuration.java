@@ -14,10 +14,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import app.cloudgame.core.PageStartScripts;
+
 public class Configuration {
 
     public static final String ENHANCE_PC = "enhance_pc";
@@ -25,8 +27,20 @@ public class Configuration {
     private static final String BRIDGE_INJECT = "init_bridge";
     public static final String USER_AGENT = "user_agent";
     public static final String LAUNCH_URL = "launch_url";
+    public static final String LAUNCH_PROFILE = "launch_profile";
+    public static final String WEB_PROFILES = "web_profiles";
     public static final String FORCE_DISABLE_USER_GUIDE = "force_disable_guide";
     public static final String CHECK_UPDATE_ON_LAUNCH = "check_update_on_launch";
+    public static final String PERF_TRACE = "perf_trace";
+    public static final String STREAM_STATS = "stream_stats";
+    public static final String VIDEO_FRAME_STATS = "video_frame_stats";
+    public static final String RENDER_SCALE_PROBE = "render_scale_probe";
+    public static final String THERMAL_GOVERNOR = "thermal_governor";
+    public static final String RECORD_POINTER = "record_pointer";
+    public static final String GAMEPAD_MOUSE = "gamepad_mouse";
+    public static final String TOUCH_TRACKPAD = "touch_trackpad";
+    public static final String TRACKPAD_BUTTONS = "trackpad_buttons";
+    public static final String PENDING_CLEAR_WEB_DATA = "pending_clear_web_data";
 
     public static final String YS_DOMAIN = "ys.mihoyo.com";
     public static final String DEFAULT_URL = "https://ys.mihoyo.com/cloud/?utm_source=default#/";
@@ -50,7 +64,8 @@ public class Configuration {
     }
 
     private Configuration() {
-        kv = MMKV.defaultMMKV();
+        // shared by the launcher and the :game process
+        kv = MMKV.defaultMMKV(MMKV.MULTI_PROCESS_MODE, null);
     }
 
     public void preloadPageStartScripts(Context context) {
@@ -70,13 +85,13 @@ public class Configuration {
     }
 
     private String[] loadPageStartScripts() {
-        HashSet<String> scripts = new HashSet<>();
+        List<String> keys = new ArrayList<>(3);
         if (readBooleanValue(Configuration.V_CONSOLE)) {
-            scripts.add(mScriptMap.get(Configuration.V_CONSOLE));
+            keys.add(Configuration.V_CONSOLE);
         }
-        scripts.add(mScriptMap.get(Configuration.ENHANCE_PC));
-        scripts.add(mScriptMap.get(Configuration.BRIDGE_INJECT));
-        return scripts.toArray(new String[0]);
+        keys.add(Configuration.ENHANCE_PC);
+        keys.add(Configuration.BRIDGE_INJECT);
+        return PageStartScripts.select(mScriptMap, keys);
     }
 
     public static String readAssetFileAsString(Context context, String fileName) {
@@ -141,4 +156,31 @@ public class Configuration {
         kv.encode("mouse_speed", level);
     }
 
+    public int getRenderScale() {
+        return kv.decodeInt("render_scale", 100);
+    }
+
+    public void setRenderScale(int percent) {
+        kv.encode("render_scale", percent);
+    }
+
+    /**
+     * Seconds a backgrounded game page is kept alive before the stream is torn down.
+     */
+    public int getBackgroundGraceSeconds() {
+        return kv.decodeInt("background_grace_s", 60);
+    }
+
+    public void setBackgroundGraceSeconds(int seconds) {
+        kv.encode("background_grace_s", seconds);
+    }
+
+    public int getStreamStatsIntervalMs() {
+        return kv.decodeInt("stream_stats_interval_ms", 1000);
+    }
+
+    public int getStallThresholdMs() {
+        return kv.decodeInt("stall_threshold_ms", 100);
+    }
+
 }
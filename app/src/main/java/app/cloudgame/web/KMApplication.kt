@@ -4,22 +4,54 @@ import android.annotation.SuppressLint
 import android.app.Application
 import android.content.Context
 import android.content.Intent
+import android.os.Build
 import android.util.Log
 import android.webkit.WebView
 import androidx.appcompat.app.AppCompatDelegate
 import androidx.core.os.LocaleListCompat
+import app.cloudgame.web.webview.GAME_PROCESS_SUFFIX
+import app.cloudgame.web.webview.clearPendingWebViewData
+import app.cloudgame.web.webview.isGameProcess
 import com.tencent.mmkv.MMKV
+import java.io.File
 import java.util.Arrays
 
 
 class KMApplication: Application() {
     override fun onCreate() {
         super.onCreate()
-        WebView.setWebContentsDebuggingEnabled(true)
         MMKV.initialize(this)
+        if (isGameProcess(this)) {
+            onCreateGameProcess()
+        }
+    }
+
+    // WebActivity runs in :game, the launcher process never creates a WebView and skips all of this
+    private fun onCreateGameProcess() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            migrateWebViewData()
+            WebView.setDataDirectorySuffix(GAME_PROCESS_SUFFIX)
+        }
+        WebView.setWebContentsDebuggingEnabled(true)
+        clearPendingWebViewData(this)
         Configuration.getConfiguration().preloadPageStartScripts(this)
     }
 
+    // keeps logins from before the game process existed; a rename within the data directory is atomic
+    // and instant, so it can run before the first WebView without a copy blocking the main thread
+    private fun migrateWebViewData() {
+        val target = File(dataDir, "app_webview_$GAME_PROCESS_SUFFIX")
+        val source = File(dataDir, "app_webview")
+        if (target.exists() || !source.isDirectory) {
+            return
+        }
+        if (!source.renameTo(target)) {
+            Log.w("KMApplication", "webview data migration failed")
+            return
+        }
+        File(target, "webview_data.lock").delete()
+    }
+
     override fun attachBaseContext(base: Context?) {
         super.attachBaseContext(base)
         xcrash.XCrash.init(this)
@@ -0,0 +1,149 @@
+package app.cloudgame.web;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.Gauge;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfSession;
+
+/**
+ * Holds a low latency Wi-Fi lock while the game session is in the foreground, so Wi-Fi power save does
+ * not add latency spikes to the stream, and records transitions of the default network as session
+ * events to line stutters up with.
+ */
+public class NetworkMonitor extends ConnectivityManager.NetworkCallback {
+
+    private static final String TAG = "NetworkMonitor";
+    private static final String LOCK_TAG = "cloudgame:session";
+
+    private final ConnectivityManager mConnectivityManager;
+    private final WifiManager.WifiLock mWifiLock;
+    private final Counter mLinkChanges;
+    private final Gauge mDownstreamKbps;
+    private final Gauge mUpstreamKbps;
+    private final Gauge mWifiLockHeld;
+
+    private volatile Network mNetwork;
+    private volatile String mTransport;
+    private boolean mRegistered;
+
+    public NetworkMonitor(Context context) {
+        Context app = context.getApplicationContext();
+        mConnectivityManager = (ConnectivityManager) app.getSystemService(Context.CONNECTIVITY_SERVICE);
+        WifiManager wifiManager = (WifiManager) app.getSystemService(Context.WIFI_SERVICE);
+        // LOW_LATENCY needs API 29, HIGH_PERF is deprecated there but is the best older releases offer
+        int mode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? WifiManager.WIFI_MODE_FULL_LOW_LATENCY : WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+        mWifiLock = wifiManager.createWifiLock(mode, LOCK_TAG);
+        mWifiLock.setReferenceCounted(false);
+        MetricsRegistry registry = MetricsRegistry.getRegistry();
+        mLinkChanges = registry.counter("network.change");
+        mDownstreamKbps = registry.gauge("network.downstream_kbps");
+        mUpstreamKbps = registry.gauge("network.upstream_kbps");
+        mWifiLockHeld = registry.gauge("network.wifi_lock");
+    }
+
+    public void register() {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        mConnectivityManager.registerDefaultNetworkCallback(this);
+    }
+
+    public void unregister() {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        mConnectivityManager.unregisterNetworkCallback(this);
+    }
+
+    public void acquireWifiLock() {
+        if (!mWifiLock.isHeld()) {
+            mWifiLock.acquire();
+            mWifiLockHeld.set(1);
+            PerfSession.recordEvent("wifi_lock", "acquired");
+        }
+    }
+
+    public void releaseWifiLock() {
+        if (mWifiLock.isHeld()) {
+            mWifiLock.release();
+            mWifiLockHeld.set(0);
+            PerfSession.recordEvent("wifi_lock", "released");
+        }
+    }
+
+    private static String transportOf(NetworkCapabilities caps) {
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ethernet";
+        }
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "wifi";
+        }
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular";
+        }
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return "vpn";
+        }
+        return "other";
+    }
+
+    // callbacks below run on the ConnectivityThread
+
+    @Override
+    public void onAvailable(@NonNull Network network) {
+        if (mNetwork != null && !mNetwork.equals(network)) {
+            mLinkChanges.inc();
+        }
+        mNetwork = network;
+        PerfSession.recordEvent("network", "available " + network);
+    }
+
+    @Override
+    public void onLost(@NonNull Network network) {
+        if (network.equals(mNetwork)) {
+            mNetwork = null;
+            mTransport = null;
+        }
+        Log.i(TAG, "lost " + network);
+        PerfSession.recordEvent("network", "lost " + network);
+    }
+
+    @Override
+    public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities caps) {
+        String transport = transportOf(caps);
+        int down = caps.getLinkDownstreamBandwidthKbps();
+        int up = caps.getLinkUpstreamBandwidthKbps();
+        if (!transport.equals(mTransport)) {
+            Log.i(TAG, "transport " + mTransport + " -> " + transport);
+            PerfSession.recordEvent("network", "transport " + mTransport + " -> " + transport);
+            mTransport = transport;
+        }
+        // the estimates move constantly, only keep changes above a quarter
+        double last = mDownstreamKbps.get();
+        if (Math.abs(down - last) > last / 4) {
+            PerfSession.recordEvent("network", "bandwidth down " + down + " kbps, up " + up + " kbps");
+        }
+        mDownstreamKbps.set(down);
+        mUpstreamKbps.set(up);
+    }
+
+    @Override
+    public void onLinkPropertiesChanged(@NonNull Network network, @NonNull LinkProperties properties) {
+        PerfSession.recordEvent("network", "link " + properties.getInterfaceName()
+                + ", " + properties.getLinkAddresses().size() + " addresses");
+    }
+}
@@ -0,0 +1,219 @@
+package app.cloudgame.web;
+
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Display;
+import android.view.WindowManager;
+
+import app.cloudgame.web.perf.Gauge;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfSession;
+import app.cloudgame.web.perf.StreamStatsBuffer;
+import app.cloudgame.web.perf.VideoFrameStats;
+
+/**
+ * Picks the display mode whose refresh rate best matches the stream frame rate. The rate is either
+ * configured per entry or, in auto mode, read from the page:
+ * <ul>
+ *     <li>the received frame rate of the WebRTC stream, sampled while {@link Configuration#STREAM_STATS}
+ *     is on. It is the rate the server sends at and is not bounded by the panel, so the mode can be
+ *     raised as well as lowered.</li>
+ *     <li>otherwise the presented frame rate from the requestVideoFrameCallback module
+ *     ({@link Configuration#VIDEO_FRAME_STATS}). The page cannot present faster than the panel
+ *     refreshes, so this source only ever lowers the rate.</li>
+ * </ul>
+ * With neither enabled auto mode keeps the current mode.
+ * <p>
+ * WebView draws into the window surface, so the mode is requested through
+ * {@link WindowManager.LayoutParams#preferredDisplayModeId} rather than Surface#setFrameRate.
+ */
+public class RefreshRateController implements DisplayManager.DisplayListener {
+
+    private static final String TAG = "RefreshRate";
+    private static final long POLL_INTERVAL_MS = 5_000;
+    // one sample per stats interval, averaged so a single late sample does not switch the panel
+    private static final int RECEIVED_SAMPLES = 5;
+
+    private final Activity mActivity;
+    private final DisplayManager mDisplayManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Gauge mRequestedRate;
+    private final Gauge mActualRate;
+    private final int mConfiguredFps;
+    private final float[] mReceived = new float[RECEIVED_SAMPLES];
+    private float mTargetFps;
+    private boolean mStarted;
+    private boolean mNoSourceLogged;
+
+    private final Runnable mPollStreamRate = new Runnable() {
+        @Override
+        public void run() {
+            PerfSession session = PerfSession.current();
+            if (session != null) {
+                float fps = estimateStreamFps(session);
+                // ignore small drift so the panel is not switched back and forth
+                if (fps > 0 && Math.abs(fps - mTargetFps) > mTargetFps * 0.1f) {
+                    applyTarget(fps);
+                }
+            }
+            mHandler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * @param configuredFps stream frame rate configured for the entry, 0 to follow the page's stats
+     */
+    public RefreshRateController(Activity activity, int configuredFps) {
+        mActivity = activity;
+        mConfiguredFps = configuredFps;
+        mDisplayManager = (DisplayManager) activity.getSystemService(Context.DISPLAY_SERVICE);
+        mRequestedRate = MetricsRegistry.getRegistry().gauge("display.requested_refresh_rate");
+        mActualRate = MetricsRegistry.getRegistry().gauge("display.refresh_rate");
+    }
+
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mDisplayManager.registerDisplayListener(this, mHandler);
+        mActualRate.set(getDisplay().getRefreshRate());
+        if (mConfiguredFps > 0) {
+            applyTarget(mConfiguredFps);
+        } else {
+            mHandler.postDelayed(mPollStreamRate, POLL_INTERVAL_MS);
+        }
+    }
+
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mHandler.removeCallbacks(mPollStreamRate);
+        mDisplayManager.unregisterDisplayListener(this);
+    }
+
+    /**
+     * Picks the mode again, e.g. after a foldable switched screens and the resolution changed.
+     */
+    public void refresh() {
+        if (mStarted && mTargetFps > 0) {
+            applyTarget(mTargetFps);
+        }
+    }
+
+    // the sections are only read, creating them here would export empty ones
+    private float estimateStreamFps(PerfSession session) {
+        StreamStatsBuffer streamStats = session.peekStreamStats();
+        if (streamStats != null) {
+            int count = streamStats.copyRecent(StreamStatsBuffer.FPS, mReceived);
+            float sum = 0;
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                if (mReceived[i] > 0) {
+                    sum += mReceived[i];
+                    valid++;
+                }
+            }
+            if (valid > 0) {
+                return sum / valid;
+            }
+        }
+        VideoFrameStats frameStats = session.peekVideoFrameStats();
+        if (frameStats != null) {
+            return frameStats.getEstimatedFps();
+        }
+        if (!mNoSourceLogged) {
+            mNoSourceLogged = true;
+            Log.i(TAG, "auto mode has no frame rate source, enable stream stats or video frame stats");
+        }
+        return 0;
+    }
+
+    private Display getDisplay() {
+        return mActivity.getWindowManager().getDefaultDisplay();
+    }
+
+    private void applyTarget(float fps) {
+        mTargetFps = fps;
+        Display.Mode mode = chooseMode(getDisplay(), fps);
+        if (mode == null) {
+            return;
+        }
+        WindowManager.LayoutParams params = mActivity.getWindow().getAttributes();
+        if (params.preferredDisplayModeId == mode.getModeId()) {
+            return;
+        }
+        params.preferredDisplayModeId = mode.getModeId();
+        mActivity.getWindow().setAttributes(params);
+        mRequestedRate.set(mode.getRefreshRate());
+        Log.i(TAG, "stream " + fps + " fps, requested mode " + mode.getModeId() + " @ " + mode.getRefreshRate()
+                + " Hz, current " + getDisplay().getRefreshRate() + " Hz");
+    }
+
+    /**
+     * Prefers the lowest refresh rate that is a whole multiple of the stream rate, so every frame is
+     * shown for the same number of vsyncs; falls back to the lowest rate above it, then the highest.
+     */
+    static Display.Mode chooseMode(Display display, float fps) {
+        Display.Mode current = display.getMode();
+        Display.Mode multiple = null;
+        Display.Mode above = null;
+        Display.Mode highest = null;
+        for (Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getPhysicalWidth() != current.getPhysicalWidth()
+                    || mode.getPhysicalHeight() != current.getPhysicalHeight()) {
+                continue;
+            }
+            float rate = mode.getRefreshRate();
+            if (highest == null || rate > highest.getRefreshRate()) {
+                highest = mode;
+            }
+            if (rate + 0.5f < fps) {
+                continue;
+            }
+            float ratio = rate / fps;
+            boolean isMultiple = Math.abs(ratio - Math.round(ratio)) < 0.02f;
+            if (isMultiple && (multiple == null || rate < multiple.getRefreshRate())) {
+                multiple = mode;
+            }
+            if (above == null || rate < above.getRefreshRate()) {
+                above = mode;
+            }
+        }
+        if (multiple != null) {
+            return multiple;
+        }
+        return above != null ? above : highest;
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        Display display = getDisplay();
+        if (display.getDisplayId() != displayId) {
+            return;
+        }
+        float rate = display.getRefreshRate();
+        if (rate != mActualRate.get()) {
+            Log.i(TAG, "display refresh rate now " + rate + " Hz (requested " + mRequestedRate.get() + " Hz)");
+            mActualRate.set(rate);
+            PerfSession session = PerfSession.current();
+            if (session != null) {
+                session.getFrameMonitor().setRefreshRate(rate);
+            }
+        }
+    }
+}
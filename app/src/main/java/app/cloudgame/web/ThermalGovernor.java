@@ -0,0 +1,250 @@
+package app.cloudgame.web;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.Gauge;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfSession;
+import app.cloudgame.web.perf.PerfTrace;
+import app.cloudgame.web.webview.GameView;
+import app.cloudgame.web.webview.WebContainer;
+
+/**
+ * Keeps long sessions out of hard throttling. Sustained performance mode is requested where the device
+ * supports it, and app controlled costs are stepped down as the thermal headroom shrinks:
+ * <ul>
+ *     <li>{@link #LEVEL_LIGHT}: verbose tracing off, stats sampled half as often</li>
+ *     <li>{@link #LEVEL_MODERATE}: video frame stats off, render scale capped at 85%, movement sent at 120 Hz</li>
+ *     <li>{@link #LEVEL_SEVERE}: stats sampled a quarter as often, render scale capped at 70%, movement sent at 60 Hz</li>
+ * </ul>
+ * Status changes can only step costs down; levels go back up only after the headroom has stayed lower
+ * for {@link #RECOVER_POLLS} polls, so the page is not resized back and forth around a threshold. A
+ * level change touches only the settings it changes, and the render scale limit is a cap on the view
+ * rather than a scale of its own, so a {@link app.cloudgame.web.perf.RenderScaleProbe} run stays below it.
+ */
+public class ThermalGovernor {
+
+    private static final String TAG = "ThermalGovernor";
+
+    public static final int LEVEL_NONE = 0;
+    public static final int LEVEL_LIGHT = 1;
+    public static final int LEVEL_MODERATE = 2;
+    public static final int LEVEL_SEVERE = 3;
+
+    private static final long POLL_INTERVAL_MS = 10_000;
+    // getThermalHeadroom forecast, 1.0 is where the platform starts severe throttling
+    private static final float[] HEADROOM_THRESHOLDS = {0.7f, 0.85f, 0.95f};
+    private static final int RECOVER_POLLS = 3;
+
+    private static final int[] STATS_INTERVAL_FACTOR = {1, 2, 2, 4};
+    private static final int[] MAX_RENDER_SCALE = {100, 100, 85, 70};
+    private static final int[] MOVEMENT_FLUSH_MS = {0, 0, 8, 16};
+
+    private final Activity mActivity;
+    private GameView mGameView;
+    private final WebContainer mContainer;
+    private final PowerManager mPowerManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Gauge mLevelGauge;
+    private final Gauge mHeadroomGauge;
+    private final Gauge mStatusGauge;
+    private final Counter mTransitions;
+
+    // values configured for the session, restored when the level drops back to none
+    private int mBaseStatsInterval;
+    private boolean mBaseVideoFrameStats;
+    private int mBaseMovementFlush;
+    private int mBaseTraceLevel;
+
+    private int mLevel = LEVEL_NONE;
+    private int mStatus;
+    // last headroom the platform answered, kept through the NaN of a too early call
+    private float mHeadroom = Float.NaN;
+    private int mLowerPolls;
+    private boolean mSustainedMode;
+    private boolean mStarted;
+    private PowerManager.OnThermalStatusChangedListener mStatusListener;
+
+    private final Runnable mPoll = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+            mHandler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+
+    public ThermalGovernor(Activity activity, GameView gameView, WebContainer container) {
+        mActivity = activity;
+        mGameView = gameView;
+        mContainer = container;
+        mPowerManager = (PowerManager) activity.getSystemService(Context.POWER_SERVICE);
+        MetricsRegistry registry = MetricsRegistry.getRegistry();
+        mLevelGauge = registry.gauge("thermal.level");
+        mHeadroomGauge = registry.gauge("thermal.headroom");
+        mStatusGauge = registry.gauge("thermal.status");
+        mTransitions = registry.counter("thermal.transition");
+    }
+
+    /**
+     * Call after the session settings have been applied to the views, they are taken as the baseline.
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mBaseStatsInterval = mGameView.getStatsInterval();
+        mBaseVideoFrameStats = mGameView.isVideoFrameStats();
+        mBaseMovementFlush = mContainer.getMovementFlushInterval();
+        mBaseTraceLevel = PerfTrace.getLevel();
+
+        if (mPowerManager.isSustainedPerformanceModeSupported()) {
+            mActivity.getWindow().setSustainedPerformanceMode(true);
+            mSustainedMode = true;
+            PerfSession.recordEvent("thermal", "sustained performance mode on");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            mStatusListener = status -> {
+                mStatus = status;
+                mStatusGauge.set(status);
+                PerfSession.recordEvent("thermal", "status " + status);
+                // headroom is only read by the poll, and only the poll counts towards stepping back up
+                int target = targetLevel();
+                if (target > mLevel) {
+                    mLowerPolls = 0;
+                    setLevel(target);
+                }
+            };
+            mPowerManager.addThermalStatusListener(mStatusListener);
+        }
+        mHandler.post(mPoll);
+    }
+
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mHandler.removeCallbacks(mPoll);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mStatusListener != null) {
+            mPowerManager.removeThermalStatusListener(mStatusListener);
+            mStatusListener = null;
+        }
+        if (mSustainedMode) {
+            mActivity.getWindow().setSustainedPerformanceMode(false);
+            mSustainedMode = false;
+        }
+    }
+
+    /**
+     * Moves the governor to a view rebuilt after a renderer crash. The view must already carry the session
+     * settings; the baseline taken at start is kept, and the current level is applied to the new view.
+     */
+    public void setGameView(GameView gameView) {
+        mGameView = gameView;
+        if (mLevel == LEVEL_NONE) {
+            return;
+        }
+        if (mBaseStatsInterval > 0 && STATS_INTERVAL_FACTOR[mLevel] != 1) {
+            gameView.setStatsInterval(mBaseStatsInterval * STATS_INTERVAL_FACTOR[mLevel]);
+        }
+        if (mBaseVideoFrameStats && mLevel >= LEVEL_MODERATE) {
+            gameView.setVideoFrameStats(false);
+        }
+        if (MAX_RENDER_SCALE[mLevel] != MAX_RENDER_SCALE[LEVEL_NONE]) {
+            gameView.setRenderScaleCap(MAX_RENDER_SCALE[mLevel]);
+        }
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    private void poll() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            float headroom = mPowerManager.getThermalHeadroom(30);
+            // NaN when unsupported or polled more than once a second
+            if (!Float.isNaN(headroom)) {
+                mHeadroom = headroom;
+                mHeadroomGauge.set(headroom);
+            }
+        }
+        int target = targetLevel();
+        if (target > mLevel) {
+            mLowerPolls = 0;
+            setLevel(target);
+        } else if (target < mLevel) {
+            if (++mLowerPolls >= RECOVER_POLLS) {
+                mLowerPolls = 0;
+                setLevel(mLevel - 1);
+            }
+        } else {
+            mLowerPolls = 0;
+        }
+    }
+
+    private int targetLevel() {
+        int target = levelForStatus(mStatus);
+        if (!Float.isNaN(mHeadroom)) {
+            target = Math.max(target, levelForHeadroom(mHeadroom));
+        }
+        return target;
+    }
+
+    private static int levelForHeadroom(float headroom) {
+        int level = LEVEL_NONE;
+        for (float threshold : HEADROOM_THRESHOLDS) {
+            if (headroom >= threshold) {
+                level++;
+            }
+        }
+        return level;
+    }
+
+    private static int levelForStatus(int status) {
+        if (status >= PowerManager.THERMAL_STATUS_SEVERE) {
+            return LEVEL_SEVERE;
+        }
+        if (status == PowerManager.THERMAL_STATUS_MODERATE) {
+            return LEVEL_MODERATE;
+        }
+        if (status == PowerManager.THERMAL_STATUS_LIGHT) {
+            return LEVEL_LIGHT;
+        }
+        return LEVEL_NONE;
+    }
+
+    private void setLevel(int level) {
+        String detail = "level " + mLevel + " -> " + level + ", headroom " + mHeadroomGauge.get() + ", status " + mStatus;
+        Log.i(TAG, detail);
+        PerfSession.recordEvent("thermal", detail);
+        mTransitions.inc();
+        int previous = mLevel;
+        mLevel = level;
+        mLevelGauge.set(level);
+
+        if (mBaseStatsInterval > 0 && STATS_INTERVAL_FACTOR[level] != STATS_INTERVAL_FACTOR[previous]) {
+            mGameView.setStatsInterval(mBaseStatsInterval * STATS_INTERVAL_FACTOR[level]);
+        }
+        if (mBaseVideoFrameStats && (level < LEVEL_MODERATE) != (previous < LEVEL_MODERATE)) {
+            mGameView.setVideoFrameStats(level < LEVEL_MODERATE);
+        }
+        if (MAX_RENDER_SCALE[level] != MAX_RENDER_SCALE[previous]) {
+            mGameView.setRenderScaleCap(MAX_RENDER_SCALE[level]);
+        }
+        if (MOVEMENT_FLUSH_MS[level] != MOVEMENT_FLUSH_MS[previous]) {
+            mContainer.setMovementFlushInterval(Math.max(mBaseMovementFlush, MOVEMENT_FLUSH_MS[level]));
+        }
+        if ((level >= LEVEL_LIGHT) != (previous >= LEVEL_LIGHT)) {
+            PerfTrace.setLevel(level >= LEVEL_LIGHT ? Math.min(mBaseTraceLevel, PerfTrace.LEVEL_INFO) : mBaseTraceLevel);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.os.Handler
 import android.os.Looper
 import android.view.View
 import android.widget.Toast
+import app.cloudgame.core.Versions
 import com.king.app.dialog.AppDialog
 import com.king.app.dialog.AppDialogConfig
 import com.king.app.updater.AppUpdater
@@ -42,7 +43,7 @@ object UpdateChecker {
                             val latestReleaseObject = releasesArray.getJSONObject(0)
                             val latestVersion = latestReleaseObject.getString("tag_name")
                             val description = latestReleaseObject.getString("body")
-                            if (isNewerVersion(currentVersion, latestVersion)) {
+                            if (Versions.isNewerVersion(currentVersion, latestVersion)) {
                                 val assets = latestReleaseObject.getJSONArray("assets")
                                 var apkDownloadLink= "zzz"
                                 for (i in 0 until assets.length()) {
@@ -68,21 +69,6 @@ object UpdateChecker {
         })
     }
 
-    private fun isNewerVersion(currentVersion: String, newVersion: String): Boolean {
-        val currentVersionParts = currentVersion.replace("v", "").split(".")
-        val newVersionParts = newVersion.replace("v", "").split(".")
-
-        for (i in 0 until minOf(currentVersionParts.size, newVersionParts.size)) {
-            if (newVersionParts[i].toInt() > currentVersionParts[i].toInt()) {
-                return true
-            } else if (newVersionParts[i].toInt() < currentVersionParts[i].toInt()) {
-                return false
-            }
-        }
-
-        return newVersionParts.size > currentVersionParts.size
-    }
-
     private fun showUpdateDialog(context: Context, latestVersion: String, url: String, desc: String) {
         val config = AppDialogConfig(context)
         config.setTitle("${context.getString(R.string.new_version)} $latestVersion")
@@ -1,15 +1,28 @@
 package app.cloudgame.web;
 
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.input.InputManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Choreographer;
+import android.view.InputDevice;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.Window;
 import android.view.WindowManager;
 import android.webkit.WebView;
+import android.widget.FrameLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.window.OnBackInvokedDispatcher;
 
 import androidx.annotation.NonNull;
@@ -20,23 +33,129 @@ import com.google.gson.reflect.TypeToken;
 import java.util.List;
 import java.util.Locale;
 
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfSession;
+import app.cloudgame.web.perf.PerfTrace;
+import app.cloudgame.web.perf.RenderScaleProbe;
 import app.cloudgame.web.webview.GameView;
+import app.cloudgame.web.webview.GameViewPool;
 import app.cloudgame.web.webview.IWebPageCallback;
+import app.cloudgame.web.webview.KeyRemapper;
+import app.cloudgame.web.webview.StreamStatsOverlay;
 import app.cloudgame.web.webview.UtilsKt;
+import app.cloudgame.web.webview.WebContainer;
+import app.cloudgame.web.webview.WebProfile;
 
-public class WebActivity extends Activity implements IWebPageCallback {
+public class WebActivity extends Activity implements IWebPageCallback, InputManager.InputDeviceListener {
+
+    private static final String TAG = "WebActivity";
+    // a second renderer loss within this window of the last recovery is treated as a crash loop
+    private static final long RECOVER_LOOP_MS = 30_000;
+    // a rebuilt page that has not finished loading by then is given up on, so the next loss recovers again
+    private static final long RECOVER_TIMEOUT_MS = 60_000;
 
     public static final String START_SCRIPT = "page_start_scripts";
     public static final String LOADED_SCRIPT = "page_load_scripts";
     public static final String URL = "url";
+    public static final String PROFILE = "profile";
+    public static final String FRAME_RATE = "frame_rate";
+    public static final String KEYMAP = "keymap";
     private WebView webView;
+    private PerfSession perfSession;
+    private long pageStartTime;
+    private RenderScaleProbe renderScaleProbe;
+    private RefreshRateController refreshRateController;
+    private ThermalGovernor thermalGovernor;
+    private NetworkMonitor networkMonitor;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable teardownSession = this::teardownSession;
+    private final Runnable recoverTimeout = this::onRecoverTimeout;
+    // WebActivities alive in :game, popups can open more than one
+    private static int sLiveCount;
+    // the launcher asked for the WebView data to be cleared, done once the last WebActivity is destroyed
+    private static boolean sClearWebDataOnDestroy;
+    private final BroadcastReceiver clearWebDataReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            sClearWebDataOnDestroy = true;
+            finish();
+        }
+    };
+    // pauseTimers applies to every WebView in the process, popups can start another WebActivity in :game
+    private static int sStartedCount;
+    private boolean backgrounded;
+    private long backgroundTime;
+    // url of a session torn down in the background, reloaded when the activity comes back
+    private String suspendedUrl;
+    private boolean clearHistoryOnLoad;
+
+    private GameViewPool gameViewPool;
+    private String lastUrl;
+    // back/forward list and scroll state of the last finished page, restored after a renderer crash
+    private Bundle savedWebState;
+    private long recoverStartTime;
+    private long lastRecoverTime;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         setupActivity();
         super.onCreate(savedInstanceState);
+        // the process outlives the activity, a clear requested while no game ran is done here
+        if (sLiveCount++ == 0) {
+            UtilsKt.clearPendingWebViewData(this);
+        }
+        IntentFilter clearFilter = new IntentFilter(UtilsKt.ACTION_CLEAR_WEB_DATA);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            registerReceiver(clearWebDataReceiver, clearFilter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            registerReceiver(clearWebDataReceiver, clearFilter);
+        }
         setContentView(R.layout.activity_main);
         loadWeb();
+        InputManager inputManager = (InputManager) getSystemService(INPUT_SERVICE);
+        inputManager.registerInputDeviceListener(this, handler);
+    }
+
+    // configChanges in the manifest keep the activity, and with it the cloud session, alive through these
+    @Override
+    public void onConfigurationChanged(@NonNull android.content.res.Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        PerfSession.recordEvent("configuration", newConfig.screenWidthDp + "x" + newConfig.screenHeightDp
+                + " dp, keyboard " + newConfig.keyboard + ", navigation " + newConfig.navigation
+                + ", ui mode " + newConfig.uiMode);
+        enableImmersiveMode();
+        if (refreshRateController != null) {
+            refreshRateController.refresh();
+        }
+        restorePointerCapture();
+    }
+
+    @Override
+    public void onInputDeviceAdded(int deviceId) {
+        InputDevice device = InputDevice.getDevice(deviceId);
+        if (device == null) {
+            return;
+        }
+        PerfSession.recordEvent("input_device", "added " + device.getName());
+        if (device.supportsSource(InputDevice.SOURCE_MOUSE)) {
+            restorePointerCapture();
+        }
+    }
+
+    @Override
+    public void onInputDeviceRemoved(int deviceId) {
+        PerfSession.recordEvent("input_device", "removed " + deviceId);
+    }
+
+    @Override
+    public void onInputDeviceChanged(int deviceId) {
+    }
+
+    private void restorePointerCapture() {
+        if (webView != null && webView.getParent() instanceof WebContainer) {
+            ((WebContainer) webView.getParent()).restorePointerCapture();
+        }
     }
 
     private void enableImmersiveMode() {
@@ -67,32 +186,275 @@ public class WebActivity extends Activity implements IWebPageCallback {
         if (view == null) {
             return;
         }
-        webView = view;
-        view.setWebCallback(this);
-        view.setOnClickListener(l -> {
-            view.requestPointerCapture();
-        });
         String url = getIntent().getStringExtra("url");
         if (TextUtils.isEmpty(url)) {
             url = Configuration.DEFAULT_URL;
         }
+        lastUrl = url;
+        // the :game process outlives the activity, pick up settings changed in the launcher since it started
+        Configuration.getConfiguration().commitConfig();
+        PerfTrace.setLevel(PerfTrace.levelFor(Configuration.getConfiguration().readBooleanValue(Configuration.PERF_TRACE)));
+        gameViewPool = new GameViewPool(this);
+        perfSession = PerfSession.begin(this, url);
+        networkMonitor = new NetworkMonitor(this);
+        networkMonitor.register();
+        networkMonitor.acquireWifiLock();
+        refreshRateController = new RefreshRateController(this, getIntent().getIntExtra(FRAME_RATE, 0));
+        refreshRateController.start();
+        applyKeyMap((WebContainer) view.getParent());
+        setupGameView(view);
         view.loadUrl(url);
     }
 
+    private void applyKeyMap(WebContainer container) {
+        String keymap = getIntent().getStringExtra(KEYMAP);
+        if (TextUtils.isEmpty(keymap)) {
+            return;
+        }
+        try {
+            container.setKeyMap(KeyRemapper.compile(keymap));
+        } catch (IllegalArgumentException e) {
+            // saved entries were checked in the launcher, this only catches key names unknown to this release
+            Log.w(TAG, "keymap ignored, " + e.getMessage());
+            Toast.makeText(this, getString(R.string.keymap) + getString(R.string.format_error) + ", " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    // per view part of the session setup, also run for the view rebuilt after a renderer crash
+    private void setupGameView(GameView view) {
+        webView = view;
+        view.setWebCallback(this);
+        view.setOnClickListener(l -> {
+            view.getContainer().requestPointerLock(null);
+        });
+        WebProfile profile = WebProfile.getProfile(getIntent().getStringExtra(PROFILE));
+        view.applyProfile(profile);
+        perfSession.setProfile(profile.name);
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.STREAM_STATS)) {
+            view.setStatsInterval(Configuration.getConfiguration().getStreamStatsIntervalMs());
+            StreamStatsOverlay overlay = ((WebContainer) view.getParent()).getStatsOverlay();
+            if (overlay != null) {
+                overlay.setBuffer(perfSession.getStreamStats());
+            }
+        }
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.VIDEO_FRAME_STATS)) {
+            view.setVideoFrameStats(true);
+        }
+        view.setRenderScale(Configuration.getConfiguration().getRenderScale());
+        if (thermalGovernor != null) {
+            // the container, and with it the throttled movement flush, survives the rebuild; a new
+            // governor would take the throttled values as its baseline
+            thermalGovernor.setGameView(view);
+        } else if (Configuration.getConfiguration().readBooleanValue(Configuration.THERMAL_GOVERNOR)) {
+            thermalGovernor = new ThermalGovernor(this, view, (WebContainer) view.getParent());
+            thermalGovernor.start();
+        }
+    }
+
+    @Override
+    public void onRenderProcessGone(GameView gameView, boolean didCrash, int rendererPriorityAtExit) {
+        MetricsRegistry.getRegistry().counter("renderer.gone").inc();
+        String detail = (didCrash ? "crash" : "killed") + ", priority " + rendererPriorityAtExit + ", url " + lastUrl;
+        Log.w(TAG, "render process gone: " + detail);
+        PerfSession.recordEvent("renderer", "gone " + detail);
+        if (gameView != webView) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (recoverStartTime != 0 || now - lastRecoverTime < RECOVER_LOOP_MS) {
+            // the page takes the renderer down again right after a reload, give up instead of looping
+            abandonRecovery();
+            return;
+        }
+        if (suspendedUrl != null) {
+            // torn down in the background, onStart loads the game into the rebuilt view
+            handler.post(() -> recoverGameView(false));
+            return;
+        }
+        recoverStartTime = now;
+        // let every WebView bound to the dead renderer get its callback before the rebuild
+        handler.post(() -> recoverGameView(true));
+        handler.postDelayed(recoverTimeout, RECOVER_TIMEOUT_MS);
+    }
+
+    private void abandonRecovery() {
+        PerfSession.recordEvent("renderer", "recovery abandoned");
+        Toast.makeText(this, R.string.render_process_gone, Toast.LENGTH_LONG).show();
+        finish();
+    }
+
+    private void onRecoverTimeout() {
+        if (recoverStartTime == 0) {
+            return;
+        }
+        MetricsRegistry.getRegistry().counter("renderer.recovery_timeout").inc();
+        PerfSession.recordEvent("renderer", "recovery not finished after " + RECOVER_TIMEOUT_MS + " ms");
+        if (((GameView) webView).isRenderProcessGone()) {
+            abandonRecovery();
+            return;
+        }
+        // counts as an attempt, a loss right after it is still a crash loop
+        lastRecoverTime = SystemClock.uptimeMillis();
+        recoverStartTime = 0;
+    }
+
+    private void recoverGameView(boolean load) {
+        long start = System.nanoTime();
+        if (renderScaleProbe != null) {
+            // holds the old view, a new probe is started once the rebuilt page has loaded
+            renderScaleProbe.stop();
+            renderScaleProbe = null;
+        }
+        GameView old = (GameView) webView;
+        WebContainer container = old.getContainer();
+        container.exitPointerLock();
+        container.removeView(old);
+        old.destroy();
+
+        GameView view = gameViewPool.obtain();
+        view.setId(R.id.mouse_view);
+        // index 0 keeps the stats overlay above the page
+        container.addView(view, 0, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        setupGameView(view);
+        if (backgrounded) {
+            view.onPause();
+        }
+        String source;
+        if (!load) {
+            source = "without loading";
+        } else if (savedWebState != null && view.restoreState(savedWebState) != null) {
+            source = "from saved state";
+        } else {
+            source = "from url";
+            view.loadUrl(lastUrl);
+        }
+        MetricsRegistry.getRegistry().histogram("renderer.rebuild", "us").record((System.nanoTime() - start) / 1000);
+        PerfSession.recordEvent("renderer", "rebuilt " + source);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        sStartedCount++;
+        if (webView != null) {
+            // another WebActivity going to the background may have paused the timers of this one
+            webView.resumeTimers();
+        }
+        if (!backgrounded) {
+            return;
+        }
+        backgrounded = false;
+        handler.removeCallbacks(teardownSession);
+        webView.onResume();
+        long away = SystemClock.uptimeMillis() - backgroundTime;
+        if (suspendedUrl != null) {
+            PerfSession.recordEvent("lifecycle", "reload after " + away + " ms in background");
+            clearHistoryOnLoad = true;
+            webView.loadUrl(suspendedUrl);
+            suspendedUrl = null;
+        } else {
+            PerfSession.recordEvent("lifecycle", "resume after " + away + " ms in background");
+        }
+    }
+
+    // onStop rather than onPause, a game left visible next to another window in multi-window keeps running
+    @Override
+    protected void onStop() {
+        super.onStop();
+        sStartedCount--;
+        if (isFinishing() || webView == null) {
+            return;
+        }
+        backgrounded = true;
+        backgroundTime = SystemClock.uptimeMillis();
+        webView.onPause();
+        // the activity stopped here may already be covered by a newer WebActivity, whose game keeps running
+        if (sStartedCount == 0) {
+            webView.pauseTimers();
+        }
+        handler.postDelayed(teardownSession, Configuration.getConfiguration().getBackgroundGraceSeconds() * 1000L);
+        PerfSession.recordEvent("lifecycle", "background");
+    }
+
+    private void teardownSession() {
+        if (!backgrounded || suspendedUrl != null || webView.getUrl() == null) {
+            return;
+        }
+        suspendedUrl = webView.getUrl();
+        // a blank page closes the stream connection and frees the decoder and renderer memory of the game
+        webView.loadUrl("about:blank");
+        PerfSession.recordEvent("lifecycle", "teardown " + suspendedUrl);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (webView == null) {
+            return;
+        }
+        MetricsRegistry.getRegistry().counter("memory.trim").inc();
+        PerfSession.recordEvent("memory", "trim " + level);
+        ((GameView) webView).trimMemory(level);
+        if (backgrounded && level >= TRIM_MEMORY_MODERATE) {
+            handler.removeCallbacks(teardownSession);
+            teardownSession();
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        if (networkMonitor != null) {
+            networkMonitor.acquireWifiLock();
+        }
+        if (perfSession != null) {
+            perfSession.resumeFrameMonitor(getWindowManager().getDefaultDisplay().getRefreshRate());
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        if (networkMonitor != null) {
+            networkMonitor.releaseWifiLock();
+        }
+        if (perfSession != null) {
+            perfSession.pauseFrameMonitor();
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        ((InputManager) getSystemService(INPUT_SERVICE)).unregisterInputDeviceListener(this);
+        handler.removeCallbacks(teardownSession);
+        handler.removeCallbacks(recoverTimeout);
+        unregisterReceiver(clearWebDataReceiver);
+        if (refreshRateController != null) {
+            refreshRateController.stop();
+        }
+        if (renderScaleProbe != null) {
+            renderScaleProbe.stop();
+        }
+        if (thermalGovernor != null) {
+            thermalGovernor.stop();
+        }
+        if (networkMonitor != null) {
+            networkMonitor.releaseWifiLock();
+            networkMonitor.unregister();
+        }
+        if (perfSession != null) {
+            perfSession.end();
+        }
+        if (gameViewPool != null) {
+            gameViewPool.release();
+        }
         webView.destroy();
+        if (--sLiveCount == 0 && sClearWebDataOnDestroy) {
+            sClearWebDataOnDestroy = false;
+            UtilsKt.clearPendingWebViewData(this);
+        }
     }
     @Override
     public void onBackPressed() {
@@ -105,11 +467,54 @@ public class WebActivity extends Activity implements IWebPageCallback {
 
     @Override
     public void onWebPageLoadEnd(WebView webView, String url) {
+        if (suspendedUrl != null) {
+            return;
+        }
+        if (recoverStartTime != 0) {
+            lastRecoverTime = SystemClock.uptimeMillis();
+            MetricsRegistry.getRegistry().histogram("renderer.recovery", "ms").record(lastRecoverTime - recoverStartTime);
+            PerfSession.recordEvent("renderer", "recovered in " + (lastRecoverTime - recoverStartTime) + " ms");
+            recoverStartTime = 0;
+            handler.removeCallbacks(recoverTimeout);
+            // a session that lost its renderer once is likely to again, only then is a spare worth its memory
+            gameViewPool.prewarm();
+        }
+        Bundle state = new Bundle();
+        if (webView.saveState(state) != null) {
+            savedWebState = state;
+        }
+        if (clearHistoryOnLoad) {
+            clearHistoryOnLoad = false;
+            // drops the about:blank entry left by the teardown
+            webView.clearHistory();
+        }
+        if (pageStartTime != 0) {
+            MetricsRegistry.getRegistry().histogram("page.load", "ms").record(SystemClock.uptimeMillis() - pageStartTime);
+            pageStartTime = 0;
+        }
+        if (renderScaleProbe == null && Configuration.getConfiguration().readBooleanValue(Configuration.RENDER_SCALE_PROBE)) {
+            GameView gameView = (GameView) webView;
+            renderScaleProbe = new RenderScaleProbe(getWindow(), MetricsRegistry.getRegistry(),
+                    RenderScaleProbe.DEFAULT_SCALES, gameView.getRenderScale(), scale -> {
+                        gameView.setRenderScale(scale);
+                        return gameView.getEffectiveRenderScale();
+                    });
+            renderScaleProbe.start();
+        }
         evalScripts(START_SCRIPT);
     }
 
     @Override
     public void onWebPageLoadStart(WebView webView, String url) {
+        if (suspendedUrl != null) {
+            return;
+        }
+        lastUrl = url;
+        pageStartTime = SystemClock.uptimeMillis();
+        MetricsRegistry.getRegistry().counter("page.start").inc();
+        if (perfSession != null) {
+            perfSession.setUrl(url);
+        }
         evalScripts(LOADED_SCRIPT);
     }
 
@@ -122,7 +527,7 @@ public class WebActivity extends Activity implements IWebPageCallback {
                 for (String script : scriptList) {
                     String scriptData = Configuration.getConfiguration().getScript(script);
                     if (!TextUtils.isEmpty(scriptData)) {
-                        webView.evaluateJavascript(scriptData, null);
+                        ((GameView) webView).getPageChannel().evaluate(scriptData);
                     }
                 }
             } catch (Throwable e) {
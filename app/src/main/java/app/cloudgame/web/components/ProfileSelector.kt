@@ -0,0 +1,67 @@
+package app.cloudgame.web.components
+
+import androidx.compose.foundation.clickable
+import androidx.compose.foundation.layout.Arrangement
+import androidx.compose.foundation.layout.Box
+import androidx.compose.foundation.layout.Row
+import androidx.compose.foundation.layout.fillMaxWidth
+import androidx.compose.foundation.layout.padding
+import androidx.compose.material3.DropdownMenu
+import androidx.compose.material3.DropdownMenuItem
+import androidx.compose.material3.Text
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.remember
+import androidx.compose.runtime.setValue
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.res.stringResource
+import androidx.compose.ui.unit.dp
+import app.cloudgame.web.R
+import app.cloudgame.web.webview.WebProfile
+
+@Composable
+fun profileLabel(name: String?): String {
+    return when (name) {
+        null, "", WebProfile.DEFAULT -> stringResource(R.string.profile_default)
+        WebProfile.LOW_LATENCY -> stringResource(R.string.profile_low_latency)
+        WebProfile.BATTERY_SAVER -> stringResource(R.string.profile_battery_saver)
+        else -> name.orEmpty()
+    }
+}
+
+@Composable
+fun ProfileSelector(profile: String?, onProfileSelected: (String) -> Unit, modifier: Modifier = Modifier.padding(16.dp)) {
+    var expanded by remember { mutableStateOf(false) }
+    val names = remember { WebProfile.getProfileNames() }
+
+    Row(
+        modifier = modifier.fillMaxWidth().clickable {
+            expanded = true
+        },
+        horizontalArrangement = Arrangement.SpaceBetween,
+        verticalAlignment = Alignment.CenterVertically,
+    ) {
+        Text(stringResource(R.string.perf_profile))
+        Box {
+            Text(profileLabel(profile))
+            DropdownMenu(
+                expanded = expanded,
+                onDismissRequest = { expanded = false }
+            ) {
+                names.forEach { name ->
+                    DropdownMenuItem(
+                        onClick = {
+                            expanded = false
+                            onProfileSelected(name)
+                        },
+                        text = {
+                            Text(profileLabel(name))
+                        }
+                    )
+                }
+            }
+        }
+    }
+}
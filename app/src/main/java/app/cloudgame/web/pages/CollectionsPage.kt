@@ -30,32 +30,22 @@ import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.unit.LayoutDirection
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
+import app.cloudgame.core.EntryCodec
+import app.cloudgame.core.EntryType
+import app.cloudgame.core.UiEntry
 import app.cloudgame.web.Configuration
 import app.cloudgame.web.R
 import app.cloudgame.web.WebActivity
+import app.cloudgame.web.components.ProfileSelector
+import app.cloudgame.web.webview.KeyRemapper
+import app.cloudgame.web.webview.WebProfile
 import app.cloudgame.web.webview.isValidHttpUrl
 import coil.compose.rememberAsyncImagePainter
 import com.google.gson.Gson
-import com.google.gson.JsonSyntaxException
-import com.google.gson.reflect.TypeToken
 import kotlinx.coroutines.launch
 import java.net.URL
 import java.util.UUID
 
-enum class EntryType {
-    Web,
-    Add
-}
-
-data class UiEntry(
-    val uuid: String,
-    val scheme: String,
-    val iconUrl: String,
-    val name: String,
-    var preScript: List<String>? = null,
-    val type: EntryType = EntryType.Web
-)
-
 private const val ENTRY_KEY = "quick_entry"
 private const val ADD_UUID= "07F089E0-D57F-6630-CCA8-1BFEA8B6F640"
 
@@ -66,14 +56,16 @@ val uiEntries = listOf(
         scheme = "https://ys.mihoyo.com/cloud/?autobegin=1&utm_source=default#/",
         iconUrl = "https://ys.mihoyo.com/main/favicon.ico",
         preScript = listOf(Configuration.FORCE_DISABLE_USER_GUIDE),
-        type = EntryType.Web
+        type = EntryType.Web,
+        profile = WebProfile.LOW_LATENCY
     ),
     UiEntry(
         uuid = "70CBA753-D4DA-6E90-0800-5EC184695BFD",
         name = "Start云游戏",
         scheme = "https://start.qq.com/cloudgame/index.html",
         iconUrl = "https://start.gtimg.com/web/www/favicon.ico",
-        type = EntryType.Web
+        type = EntryType.Web,
+        profile = WebProfile.LOW_LATENCY
     )
 )
 
@@ -82,12 +74,7 @@ fun getCollectionData(): List<UiEntry> {
     if (TextUtils.isEmpty(jsonData)) {
         return uiEntries
     }
-    return try {
-        val res: List<UiEntry> = Gson().fromJson(jsonData, object : TypeToken<List<UiEntry>>() {}.type)
-        res
-    } catch (e: JsonSyntaxException) {
-        uiEntries
-    }
+    return EntryCodec.decode(jsonData) ?: uiEntries
 }
 
 @Composable
@@ -130,6 +117,9 @@ fun EntryItem(index: Int, entry: UiEntry, showModalSheet: (UiEntry, Int) -> Unit
                             }
                             val gson = Gson()
                             intent.putExtra(WebActivity.LOADED_SCRIPT, gson.toJson(loadedScripts))
+                            intent.putExtra(WebActivity.PROFILE, entry.profile)
+                            intent.putExtra(WebActivity.FRAME_RATE, entry.frameRate)
+                            intent.putExtra(WebActivity.KEYMAP, entry.keymap)
                             context.startActivity(intent)
                         }
                     }
@@ -221,6 +211,9 @@ fun CollectionsPage(paddingValues: PaddingValues) {
     val nameEditText = remember { mutableStateOf("") }
     val urlEditText = remember { mutableStateOf("") }
     val iconEditText = remember { mutableStateOf("") }
+    val profileEditText = remember { mutableStateOf<String?>(null) }
+    val frameRateEditText = remember { mutableStateOf("") }
+    val keymapEditText = remember { mutableStateOf("") }
 
     ModalBottomSheetLayout(
         sheetState =  modalBottomSheetState,
@@ -238,12 +231,15 @@ fun CollectionsPage(paddingValues: PaddingValues) {
                         nameEditText.value = selectedEntry!!.name
                         urlEditText.value = selectedEntry!!.scheme
                         iconEditText.value = selectedEntry!!.iconUrl
+                        profileEditText.value = selectedEntry!!.profile
+                        frameRateEditText.value = if (selectedEntry!!.frameRate > 0) selectedEntry!!.frameRate.toString() else ""
+                        keymapEditText.value = selectedEntry!!.keymap ?: ""
                         showEntryDialog.value = true
                     },
                     onRemoveEntry = {
                         val newList = entries.toMutableList()
                         newList.removeAt(selectedEntryIndex)
-                        val json = Gson().toJson(newList)
+                        val json = EntryCodec.encode(newList)
                         Configuration.getConfiguration().setStringValue(ENTRY_KEY, json)
                         entries = newList
                     }
@@ -278,6 +274,9 @@ fun CollectionsPage(paddingValues: PaddingValues) {
                     nameEditText.value =""
                     urlEditText.value = ""
                     iconEditText.value = ""
+                    profileEditText.value = null
+                    frameRateEditText.value = ""
+                    keymapEditText.value = ""
                     isAddDialog.value = true
                     showEntryDialog.value = true
                 }
@@ -330,11 +329,37 @@ fun CollectionsPage(paddingValues: PaddingValues) {
                         value = iconEditText.value,
                         onValueChange = { iconEditText.value = it }
                     )
+                    ProfileSelector(
+                        profile = profileEditText.value,
+                        onProfileSelected = { profileEditText.value = it },
+                        modifier = Modifier.padding(6.dp)
+                    )
+                    Text(text = stringResource(R.string.frame_rate), modifier = Modifier.padding(6.dp))
+                    TextField(
+                        placeholder = { Text(stringResource(R.string.frame_rate_auto), modifier = Modifier.alpha(0.6f)) },
+                        value = frameRateEditText.value,
+                        onValueChange = { value -> frameRateEditText.value = value.filter { it.isDigit() }.take(3) }
+                    )
+                    Text(text = stringResource(R.string.keymap), modifier = Modifier.padding(6.dp))
+                    TextField(
+                        placeholder = { Text(stringResource(R.string.keymap_hint), modifier = Modifier.alpha(0.6f)) },
+                        value = keymapEditText.value,
+                        onValueChange = { keymapEditText.value = it },
+                        maxLines = 6
+                    )
                 }
             },
             confirmButton = {
                 TextButton(
                     onClick = {
+                        if (keymapEditText.value.isNotBlank()) {
+                            try {
+                                KeyRemapper.compile(keymapEditText.value)
+                            } catch (e: IllegalArgumentException) {
+                                Toast.makeText(context, context.getString(R.string.keymap) + context.getString(R.string.format_error) + ", " + e.message, Toast.LENGTH_LONG).show()
+                                return@TextButton
+                            }
+                        }
                         if (isAddDialog.value) {
                             if (TextUtils.isEmpty(nameEditText.value)) {
                                 Toast.makeText(context, context.getString(R.string.entry_name) + context.getString(R.string.required), Toast.LENGTH_SHORT).show()
@@ -361,9 +386,12 @@ fun CollectionsPage(paddingValues: PaddingValues) {
                                 scheme = urlEditText.value,
                                 iconUrl = iconEditText.value,
                                 type = EntryType.Web,
-                                uuid = UUID.randomUUID().toString()
+                                uuid = UUID.randomUUID().toString(),
+                                profile = profileEditText.value,
+                                frameRate = frameRateEditText.value.toIntOrNull() ?: 0,
+                                keymap = keymapEditText.value.ifBlank { null }
                             )
-                            val json = Gson().toJson(newList)
+                            val json = EntryCodec.encode(newList)
                             Configuration.getConfiguration().setStringValue(ENTRY_KEY, json)
                             entries = newList
                             showEntryDialog.value = false
@@ -373,9 +401,12 @@ fun CollectionsPage(paddingValues: PaddingValues) {
                                 name = nameEditText.value,
                                 scheme = urlEditText.value,
                                 iconUrl = iconEditText.value,
-                                uuid = UUID.randomUUID().toString()
+                                uuid = UUID.randomUUID().toString(),
+                                profile = profileEditText.value,
+                                frameRate = frameRateEditText.value.toIntOrNull() ?: 0,
+                                keymap = keymapEditText.value.ifBlank { null }
                             )
-                            val json = Gson().toJson(newList)
+                            val json = EntryCodec.encode(newList)
                             Configuration.getConfiguration().setStringValue(ENTRY_KEY, json)
                             entries = newList
                             showEntryDialog.value = false
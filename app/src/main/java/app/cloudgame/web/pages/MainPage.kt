@@ -35,6 +35,8 @@ import app.cloudgame.web.R
 import app.cloudgame.web.UpdateChecker
 import app.cloudgame.web.WebActivity
 import app.cloudgame.web.components.FormSwitch
+import app.cloudgame.web.components.ProfileSelector
+import app.cloudgame.web.webview.WebProfile
 import com.google.gson.Gson
 import java.net.URL
 
@@ -62,6 +64,7 @@ fun Home(paddingValues: PaddingValues) {
 
         var skipYsUserGuide by remember { mutableStateOf(Configuration.getConfiguration().readBooleanValue(Configuration.FORCE_DISABLE_USER_GUIDE)) }
         var launchUrl by remember { mutableStateOf(Configuration.getConfiguration().getStringValue(Configuration.LAUNCH_URL, Configuration.DEFAULT_URL)) }
+        var launchProfile by remember { mutableStateOf(Configuration.getConfiguration().getStringValue(Configuration.LAUNCH_PROFILE, WebProfile.DEFAULT)) }
 
         Spacer(Modifier.height(10.dp))
         Box(
@@ -122,6 +125,14 @@ fun Home(paddingValues: PaddingValues) {
             )
         }
 
+        ProfileSelector(
+            profile = launchProfile,
+            onProfileSelected = {
+                launchProfile = it
+                Configuration.getConfiguration().setStringValue(Configuration.LAUNCH_PROFILE, it)
+            }
+        )
+
         Button(
             modifier = Modifier.clip(
                 RoundedCornerShape(15.dp)
@@ -141,6 +152,7 @@ fun Home(paddingValues: PaddingValues) {
                 }
                 val gson = Gson()
                 intent.putExtra(WebActivity.LOADED_SCRIPT, gson.toJson(loadedScripts))
+                intent.putExtra(WebActivity.PROFILE, launchProfile)
                 Configuration.getConfiguration().setStringValue(Configuration.LAUNCH_URL, launchUrl)
                 context.startActivity(intent)
             }
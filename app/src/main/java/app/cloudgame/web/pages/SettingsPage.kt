@@ -24,9 +24,11 @@ import app.cloudgame.web.R
 import app.cloudgame.web.components.ConfirmItem
 import app.cloudgame.web.components.FormSwitch
 import app.cloudgame.web.components.InputDialog
-import app.cloudgame.web.webview.clearWebViewUserDataAndCache
+import app.cloudgame.web.webview.scheduleClearWebViewData
 
 val speedList = listOf(0.2f, 0.3f, 0.5f, 0.75f, 1f, 1.25f, 1.5f, 2f, 2.5f)
+val renderScaleList = listOf(50, 60, 70, 85, 100)
+val backgroundGraceList = listOf(0, 30, 60, 180, 600)
 
 fun getMouseSpeed(id: Int): Float {
     return speedList[id]
@@ -38,6 +40,10 @@ fun SettingsPage(saveTombFile: () -> Unit) {
     val context = LocalContext.current
     var expanded by remember { mutableStateOf(false) }
     var selectedIndex by remember { mutableIntStateOf(Configuration.getConfiguration().mouseSpeedLevel) }
+    var renderScaleExpanded by remember { mutableStateOf(false) }
+    var renderScale by remember { mutableIntStateOf(Configuration.getConfiguration().renderScale) }
+    var backgroundGraceExpanded by remember { mutableStateOf(false) }
+    var backgroundGrace by remember { mutableIntStateOf(Configuration.getConfiguration().backgroundGraceSeconds) }
 
     Scaffold (
         topBar = {
@@ -98,6 +104,76 @@ fun SettingsPage(saveTombFile: () -> Unit) {
                 }
 
             }
+            Row(
+                modifier = Modifier.padding(16.dp).fillMaxWidth().clickable {
+                    renderScaleExpanded = true
+                },
+                horizontalArrangement = Arrangement.SpaceBetween,
+                verticalAlignment = Alignment.CenterVertically,
+            ) {
+                Text(
+                    text = stringResource(R.string.render_scale),
+                    modifier = Modifier.width(120.dp)
+                )
+                Box {
+                    Text(
+                        text = "${renderScale}%"
+                    )
+                    DropdownMenu(
+                        modifier = Modifier.width(80.dp),
+                        expanded = renderScaleExpanded,
+                        onDismissRequest = { renderScaleExpanded = false }
+                    ) {
+                        renderScaleList.forEach { scale ->
+                            DropdownMenuItem(
+                                onClick = {
+                                    renderScaleExpanded = false
+                                    Configuration.getConfiguration().renderScale = scale
+                                    renderScale = scale
+                                },
+                                text = {
+                                    Text("${scale}%")
+                                }
+                            )
+                        }
+                    }
+                }
+            }
+            Row(
+                modifier = Modifier.padding(16.dp).fillMaxWidth().clickable {
+                    backgroundGraceExpanded = true
+                },
+                horizontalArrangement = Arrangement.SpaceBetween,
+                verticalAlignment = Alignment.CenterVertically,
+            ) {
+                Text(
+                    text = stringResource(R.string.background_grace),
+                    modifier = Modifier.width(120.dp)
+                )
+                Box {
+                    Text(
+                        text = "${backgroundGrace}s"
+                    )
+                    DropdownMenu(
+                        modifier = Modifier.width(80.dp),
+                        expanded = backgroundGraceExpanded,
+                        onDismissRequest = { backgroundGraceExpanded = false }
+                    ) {
+                        backgroundGraceList.forEach { seconds ->
+                            DropdownMenuItem(
+                                onClick = {
+                                    backgroundGraceExpanded = false
+                                    Configuration.getConfiguration().backgroundGraceSeconds = seconds
+                                    backgroundGrace = seconds
+                                },
+                                text = {
+                                    Text("${seconds}s")
+                                }
+                            )
+                        }
+                    }
+                }
+            }
             InputDialog(
                 defaultValueGetter = {
                     Configuration.getConfiguration().userAgent
@@ -112,12 +188,21 @@ fun SettingsPage(saveTombFile: () -> Unit) {
             ConfirmItem(
                 name = stringResource(R.string.clear_browser_data),
                 onConfirm = {
-                    clearWebViewUserDataAndCache(context)
+                    scheduleClearWebViewData(context)
                 },
                 tip = stringResource(R.string.confirm_clear_browser_data)
             )
+            FormSwitch(name = stringResource(R.string.gamepad_mouse), Configuration.GAMEPAD_MOUSE)
+            FormSwitch(name = stringResource(R.string.touch_trackpad), Configuration.TOUCH_TRACKPAD)
+            FormSwitch(name = stringResource(R.string.trackpad_buttons), Configuration.TRACKPAD_BUTTONS)
             FormSwitch(name = stringResource(R.string.inject_console), Configuration.V_CONSOLE)
             FormSwitch(name = stringResource(R.string.check_update_on_launch), Configuration.CHECK_UPDATE_ON_LAUNCH)
+            FormSwitch(name = stringResource(R.string.perf_trace), Configuration.PERF_TRACE)
+            FormSwitch(name = stringResource(R.string.stream_stats), Configuration.STREAM_STATS)
+            FormSwitch(name = stringResource(R.string.video_frame_stats), Configuration.VIDEO_FRAME_STATS)
+            FormSwitch(name = stringResource(R.string.render_scale_probe), Configuration.RENDER_SCALE_PROBE)
+            FormSwitch(name = stringResource(R.string.thermal_governor), Configuration.THERMAL_GOVERNOR)
+            FormSwitch(name = stringResource(R.string.record_pointer), Configuration.RECORD_POINTER)
             Row(
                 modifier = Modifier
                     .padding(16.dp)
@@ -0,0 +1,33 @@
+package app.cloudgame.web.perf;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Counter {
+
+    private final String name;
+    private final LongAdder adder = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void inc() {
+        adder.increment();
+    }
+
+    public void add(long delta) {
+        adder.add(delta);
+    }
+
+    public long get() {
+        return adder.sum();
+    }
+
+    void reset() {
+        adder.reset();
+    }
+}
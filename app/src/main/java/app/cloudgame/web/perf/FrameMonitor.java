@@ -0,0 +1,63 @@
+package app.cloudgame.web.perf;
+
+import android.view.Choreographer;
+
+public class FrameMonitor implements Choreographer.FrameCallback {
+
+    private final Histogram mFrameInterval;
+    private final Counter mFrames;
+    private final Counter mJankFrames;
+    private long mLastFrameNanos;
+    private long mJankThresholdNanos;
+    private boolean mRunning;
+
+    public FrameMonitor(MetricsRegistry registry) {
+        mFrameInterval = registry.histogram("frame.interval", "us");
+        mFrames = registry.counter("frame.count");
+        mJankFrames = registry.counter("frame.jank");
+    }
+
+    // must be called on the main thread
+    public void start(float refreshRate) {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        setRefreshRate(refreshRate);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void setRefreshRate(float refreshRate) {
+        if (refreshRate <= 0) {
+            refreshRate = 60f;
+        }
+        // a frame is janky once it takes longer than 1.5 vsync periods
+        mJankThresholdNanos = (long) (1_500_000_000L / refreshRate);
+    }
+
+    public void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            long interval = frameTimeNanos - mLastFrameNanos;
+            mFrameInterval.record(interval / 1000);
+            if (interval > mJankThresholdNanos) {
+                mJankFrames.inc();
+            }
+        }
+        mFrames.inc();
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
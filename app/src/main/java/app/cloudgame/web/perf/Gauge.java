@@ -0,0 +1,29 @@
+package app.cloudgame.web.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Gauge {
+
+    private final String name;
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    Gauge(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void set(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    public double get() {
+        return Double.longBitsToDouble(bits.get());
+    }
+
+    void reset() {
+        set(0);
+    }
+}
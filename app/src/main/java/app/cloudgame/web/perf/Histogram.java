@@ -0,0 +1,140 @@
+package app.cloudgame.web.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram in the spirit of HdrHistogram: values below 16 get an exact bucket,
+ * larger values fall into one of 8 linear sub-buckets per power of two (~12.5% error).
+ * Recording is lock-free and allocation-free.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long times) {
+        if (times <= 0) {
+            return;
+        }
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.addAndGet(indexOf(value), times);
+        count.addAndGet(times);
+        sum.addAndGet(value * times);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // retry
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return count.get() == 0 ? 0 : max.get();
+    }
+
+    public double getMean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) sum.get() / c;
+    }
+
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+        if (target == 0) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    long getBucket(int index) {
+        return buckets.get(index);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (msb - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int msb = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (1L << msb) + ((long) sub << (msb - SUB_BUCKET_BITS));
+    }
+
+    static long upperBoundOf(int index) {
+        if (index + 1 >= BUCKET_COUNT) {
+            return Long.MAX_VALUE;
+        }
+        return lowerBoundOf(index + 1) - 1;
+    }
+}
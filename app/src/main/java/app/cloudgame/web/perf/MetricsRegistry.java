@@ -0,0 +1,154 @@
+package app.cloudgame.web.perf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class MetricsRegistry {
+
+    private static volatile MetricsRegistry sRegistry;
+
+    private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> mGauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getRegistry() {
+        if (sRegistry == null) {
+            synchronized (MetricsRegistry.class) {
+                if (sRegistry == null) {
+                    sRegistry = new MetricsRegistry();
+                }
+            }
+        }
+        return sRegistry;
+    }
+
+    private MetricsRegistry() {
+    }
+
+    // Callers on hot paths should look a metric up once and keep the instance;
+    // reset() zeroes values in place so cached instances stay valid across sessions.
+    public Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            Counter prev = mCounters.putIfAbsent(name, counter);
+            if (prev != null) {
+                counter = prev;
+            }
+        }
+        return counter;
+    }
+
+    public Gauge gauge(String name) {
+        Gauge gauge = mGauges.get(name);
+        if (gauge == null) {
+            gauge = new Gauge(name);
+            Gauge prev = mGauges.putIfAbsent(name, gauge);
+            if (prev != null) {
+                gauge = prev;
+            }
+        }
+        return gauge;
+    }
+
+    public Histogram histogram(String name, String unit) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(name, unit);
+            Histogram prev = mHistograms.putIfAbsent(name, histogram);
+            if (prev != null) {
+                histogram = prev;
+            }
+        }
+        return histogram;
+    }
+
+    public void reset() {
+        for (Counter counter : mCounters.values()) {
+            counter.reset();
+        }
+        for (Gauge gauge : mGauges.values()) {
+            gauge.reset();
+        }
+        for (Histogram histogram : mHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes one JSON object per line for every metric, sorted by name so files diff cleanly.
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (String name : sorted(mCounters.keySet())) {
+            Counter counter = mCounters.get(name);
+            JsonWriter writer = newLine(out);
+            writer.beginObject();
+            writer.name("type").value("counter");
+            writer.name("name").value(name);
+            writer.name("value").value(counter.get());
+            writer.endObject();
+            endLine(writer, out);
+        }
+        for (String name : sorted(mGauges.keySet())) {
+            Gauge gauge = mGauges.get(name);
+            JsonWriter writer = newLine(out);
+            writer.beginObject();
+            writer.name("type").value("gauge");
+            writer.name("name").value(name);
+            writer.name("value").value(gauge.get());
+            writer.endObject();
+            endLine(writer, out);
+        }
+        for (String name : sorted(mHistograms.keySet())) {
+            Histogram histogram = mHistograms.get(name);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            JsonWriter writer = newLine(out);
+            writer.beginObject();
+            writer.name("type").value("histogram");
+            writer.name("name").value(name);
+            writer.name("unit").value(histogram.getUnit());
+            writer.name("count").value(histogram.getCount());
+            writer.name("min").value(histogram.getMin());
+            writer.name("max").value(histogram.getMax());
+            writer.name("mean").value(histogram.getMean());
+            writer.name("p50").value(histogram.getPercentile(50));
+            writer.name("p90").value(histogram.getPercentile(90));
+            writer.name("p99").value(histogram.getPercentile(99));
+            // sparse [lowerBound, count] pairs, enough to rebuild the distribution offline
+            writer.name("buckets").beginArray();
+            for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+                long c = histogram.getBucket(i);
+                if (c != 0) {
+                    writer.beginArray().value(Histogram.lowerBoundOf(i)).value(c).endArray();
+                }
+            }
+            writer.endArray();
+            writer.endObject();
+            endLine(writer, out);
+        }
+    }
+
+    static JsonWriter newLine(Writer out) {
+        return new JsonWriter(out);
+    }
+
+    static void endLine(JsonWriter writer, Writer out) throws IOException {
+        writer.flush();
+        out.write('\n');
+    }
+
+    private static List<String> sorted(Set<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,229 @@
+package app.cloudgame.web.perf;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.cloudgame.web.BuildConfig;
+import app.cloudgame.web.Configuration;
+
+/**
+ * One {@link app.cloudgame.web.WebActivity} session worth of metrics. The session is written to
+ * {@code Android/data/<package>/files/perf_sessions/session_<start>.jsonl} when it ends, so it can be
+ * pulled with adb and compared across builds.
+ */
+public class PerfSession {
+
+    private static final String TAG = "PerfSession";
+    public static final String DIR_NAME = "perf_sessions";
+
+    private static final ExecutorService sExportExecutor = Executors.newSingleThreadExecutor();
+    private static volatile PerfSession sCurrent;
+
+    private final Context mContext;
+    private final MetricsRegistry mRegistry;
+    private final FrameMonitor mFrameMonitor;
+    private final StallDetector mStallDetector;
+    private StreamStatsBuffer mStreamStats;
+    private VideoFrameStats mVideoFrameStats;
+    private final SessionEventLog mEvents;
+    private final List<SessionSection> mSections = new ArrayList<>();
+    private final long mStartWallTime;
+    private final long mStartUptime;
+    private String mUrl;
+    private String mProfile;
+    private boolean mEnded;
+
+    public static PerfSession begin(Activity activity, String url) {
+        PerfSession previous = sCurrent;
+        if (previous != null) {
+            previous.end();
+        }
+        PerfSession session = new PerfSession(activity.getApplicationContext(), url);
+        sCurrent = session;
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        session.mFrameMonitor.start(refreshRate);
+        session.mStallDetector.start();
+        return session;
+    }
+
+    public static PerfSession current() {
+        return sCurrent;
+    }
+
+    private PerfSession(Context context, String url) {
+        mContext = context;
+        mUrl = url;
+        mRegistry = MetricsRegistry.getRegistry();
+        mRegistry.reset();
+        mFrameMonitor = new FrameMonitor(mRegistry);
+        mStartWallTime = System.currentTimeMillis();
+        mStartUptime = SystemClock.uptimeMillis();
+        mEvents = new SessionEventLog(mStartUptime);
+        mSections.add(mEvents);
+        mStallDetector = new StallDetector(context, mRegistry, mStartWallTime, Configuration.getConfiguration().getStallThresholdMs());
+    }
+
+    public MetricsRegistry getRegistry() {
+        return mRegistry;
+    }
+
+    public FrameMonitor getFrameMonitor() {
+        return mFrameMonitor;
+    }
+
+    /**
+     * Stops frame timing while the activity is paused, no frames are drawn then and the gap would count
+     * as jank.
+     */
+    public void pauseFrameMonitor() {
+        mFrameMonitor.stop();
+    }
+
+    public void resumeFrameMonitor(float refreshRate) {
+        if (!mEnded) {
+            mFrameMonitor.start(refreshRate);
+        }
+    }
+
+    public synchronized StreamStatsBuffer getStreamStats() {
+        if (mStreamStats == null) {
+            mStreamStats = new StreamStatsBuffer(mRegistry);
+            mSections.add(mStreamStats);
+        }
+        return mStreamStats;
+    }
+
+    public synchronized VideoFrameStats getVideoFrameStats() {
+        if (mVideoFrameStats == null) {
+            mVideoFrameStats = new VideoFrameStats(mRegistry);
+            mSections.add(mVideoFrameStats);
+        }
+        return mVideoFrameStats;
+    }
+
+    /**
+     * Like {@link #getStreamStats()} but for readers, null while the page has not sent any samples, so
+     * no empty section is exported.
+     */
+    public synchronized StreamStatsBuffer peekStreamStats() {
+        return mStreamStats;
+    }
+
+    /**
+     * Like {@link #getVideoFrameStats()} but for readers, null while the page has not sent any summary.
+     */
+    public synchronized VideoFrameStats peekVideoFrameStats() {
+        return mVideoFrameStats;
+    }
+
+    public SessionEventLog getEvents() {
+        return mEvents;
+    }
+
+    /**
+     * Adds an event to the current session, if there is one.
+     */
+    public static void recordEvent(String name, String detail) {
+        PerfSession session = sCurrent;
+        if (session != null) {
+            session.mEvents.add(name, detail);
+        }
+    }
+
+    public void setUrl(String url) {
+        mUrl = url;
+    }
+
+    public void setProfile(String profile) {
+        mProfile = profile;
+    }
+
+    public synchronized void addSection(SessionSection section) {
+        mSections.add(section);
+    }
+
+    // a second WebActivity (e.g. opened from a popup) takes over the shared registry, which ends this session early
+    public void end() {
+        if (mEnded) {
+            return;
+        }
+        mEnded = true;
+        if (sCurrent == this) {
+            sCurrent = null;
+        }
+        mFrameMonitor.stop();
+        mStallDetector.stop();
+        final long duration = SystemClock.uptimeMillis() - mStartUptime;
+        final List<SessionSection> sections;
+        synchronized (this) {
+            sections = new ArrayList<>(mSections);
+        }
+        // the registry is shared with the next session, so snapshot it before leaving the main thread
+        final StringWriter metrics = new StringWriter();
+        try {
+            mRegistry.writeTo(metrics);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        sExportExecutor.execute(() -> export(duration, metrics.toString(), sections));
+    }
+
+    private void export(long durationMs, String metrics, List<SessionSection> sections) {
+        File dir = getSessionDir(mContext);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "can not create " + dir);
+            return;
+        }
+        File file = new File(dir, "session_" + mStartWallTime + ".jsonl");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            JsonWriter writer = MetricsRegistry.newLine(out);
+            writer.beginObject();
+            writer.name("type").value("session");
+            writer.name("start").value(mStartWallTime);
+            writer.name("duration_ms").value(durationMs);
+            writer.name("version").value(BuildConfig.VERSION_NAME);
+            writer.name("version_code").value(BuildConfig.VERSION_CODE);
+            writer.name("build_type").value(BuildConfig.BUILD_TYPE);
+            writer.name("device").value(Build.MANUFACTURER + " " + Build.MODEL);
+            writer.name("sdk").value(Build.VERSION.SDK_INT);
+            writer.name("url").value(mUrl);
+            writer.name("profile").value(mProfile);
+            writer.endObject();
+            MetricsRegistry.endLine(writer, out);
+
+            out.write(metrics);
+            for (SessionSection section : sections) {
+                section.writeTo(out);
+            }
+            Log.i(TAG, "session saved to " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static File getSessionDir(Context context) {
+        File dir = context.getExternalFilesDir(DIR_NAME);
+        if (dir == null) {
+            dir = new File(context.getFilesDir(), DIR_NAME);
+        }
+        return dir;
+    }
+}
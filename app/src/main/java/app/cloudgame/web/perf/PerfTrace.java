@@ -0,0 +1,99 @@
+package app.cloudgame.web.perf;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import app.cloudgame.web.BuildConfig;
+
+/**
+ * Leveled wrapper around {@link Trace}. Everything is guarded by {@link #COMPILED}, so building with
+ * {@code PERF_TRACE=false} lets R8 drop the calls; at runtime nothing is emitted until
+ * {@link #setLevel(int)} raises the level from {@link #LEVEL_OFF}.
+ * <p>
+ * Use {@code adb shell setprop log.tag.PerfTrace VERBOSE} to also get per-event logcat output.
+ */
+public final class PerfTrace {
+
+    public static final String TAG = "PerfTrace";
+
+    public static final int LEVEL_OFF = 0;
+    // pipeline sections: bridge dispatch, script injection, input → evaluateJavascript
+    public static final int LEVEL_INFO = 1;
+    // per-event logcat output on top of LEVEL_INFO
+    public static final int LEVEL_VERBOSE = 2;
+
+    public static final boolean COMPILED = BuildConfig.PERF_TRACE;
+
+    private static volatile int sLevel = LEVEL_OFF;
+    private static final AtomicInteger sCookie = new AtomicInteger();
+
+    private PerfTrace() {
+    }
+
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    public static int getLevel() {
+        return sLevel;
+    }
+
+    public static int levelFor(boolean enabled) {
+        if (!enabled) {
+            return LEVEL_OFF;
+        }
+        return Log.isLoggable(TAG, Log.VERBOSE) ? LEVEL_VERBOSE : LEVEL_INFO;
+    }
+
+    public static boolean isEnabled(int level) {
+        return COMPILED && level <= sLevel;
+    }
+
+    /**
+     * @return whether a section was opened; pass it back to {@link #end(boolean)} so a level change
+     * in between can not unbalance the trace.
+     */
+    public static boolean begin(int level, String name) {
+        if (!isEnabled(level)) {
+            return false;
+        }
+        Trace.beginSection(name);
+        return true;
+    }
+
+    public static void end(boolean begun) {
+        if (COMPILED && begun) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @return a non-zero cookie when an async section was started, 0 otherwise.
+     */
+    public static int beginAsync(int level, String name) {
+        if (!isEnabled(level) || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return 0;
+        }
+        int cookie = sCookie.incrementAndGet();
+        if (cookie == 0) {
+            cookie = sCookie.incrementAndGet();
+        }
+        Trace.beginAsyncSection(name, cookie);
+        return cookie;
+    }
+
+    public static void endAsync(String name, int cookie) {
+        if (COMPILED && cookie != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+
+    public static void verbose(String tag, String message) {
+        if (isEnabled(LEVEL_VERBOSE)) {
+            Log.d(tag, message);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package app.cloudgame.web.perf;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Measurement mode for render scale: steps through a list of scales and records the frame durations
+ * reported by {@link FrameMetrics} for each one under {@code render_scale.<percent>.frame}. A step is
+ * recorded under the scale actually in effect, which a thermal cap may hold below the one asked for.
+ */
+public class RenderScaleProbe implements Window.OnFrameMetricsAvailableListener {
+
+    private static final String TAG = "RenderScaleProbe";
+    public static final int[] DEFAULT_SCALES = {100, 85, 70, 50};
+    private static final long STEP_MS = 20_000;
+    // the relayout after a scale change is not representative
+    private static final long WARMUP_MS = 2_000;
+
+    private final Window mWindow;
+    private final MetricsRegistry mRegistry;
+    private final IntUnaryOperator mApplyScale;
+    private final int[] mScales;
+    private final int mRestoreScale;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread mMetricsThread;
+    private int mStep = -1;
+    private volatile Histogram mFrames;
+    private volatile Counter mDropped;
+    private volatile long mMeasureFrom;
+
+    /**
+     * @param applyScale sets a scale and returns the one in effect
+     */
+    public RenderScaleProbe(Window window, MetricsRegistry registry, int[] scales, int restoreScale, IntUnaryOperator applyScale) {
+        mWindow = window;
+        mRegistry = registry;
+        mScales = scales;
+        mRestoreScale = restoreScale;
+        mApplyScale = applyScale;
+    }
+
+    public void start() {
+        if (mMetricsThread != null) {
+            return;
+        }
+        mMetricsThread = new HandlerThread(TAG);
+        mMetricsThread.start();
+        mWindow.addOnFrameMetricsAvailableListener(this, new Handler(mMetricsThread.getLooper()));
+        nextStep();
+    }
+
+    public void stop() {
+        if (mMetricsThread == null) {
+            return;
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+        mWindow.removeOnFrameMetricsAvailableListener(this);
+        mMetricsThread.quitSafely();
+        mMetricsThread = null;
+        mFrames = null;
+        mApplyScale.applyAsInt(mRestoreScale);
+    }
+
+    private void nextStep() {
+        mStep++;
+        if (mStep >= mScales.length) {
+            stop();
+            logSummary();
+            return;
+        }
+        mFrames = null;
+        int scale = mApplyScale.applyAsInt(mScales[mStep]);
+        mDropped = mRegistry.counter("render_scale." + scale + ".dropped");
+        mMeasureFrom = SystemClock.uptimeMillis() + WARMUP_MS;
+        mFrames = mRegistry.histogram("render_scale." + scale + ".frame", "us");
+        mMainHandler.postDelayed(this::nextStep, STEP_MS);
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+        Histogram frames = mFrames;
+        if (frames == null || SystemClock.uptimeMillis() < mMeasureFrom) {
+            return;
+        }
+        frames.record(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION) / 1000);
+        if (dropCountSinceLastInvocation > 0) {
+            mDropped.add(dropCountSinceLastInvocation);
+        }
+    }
+
+    private void logSummary() {
+        for (int scale : mScales) {
+            Histogram frames = mRegistry.histogram("render_scale." + scale + ".frame", "us");
+            if (frames.getCount() == 0) {
+                // held under a cap for the whole step
+                continue;
+            }
+            Log.i(TAG, "scale " + scale + "%: frames=" + frames.getCount()
+                    + " p50=" + frames.getPercentile(50) + "us p90=" + frames.getPercentile(90)
+                    + "us p99=" + frames.getPercentile(99) + "us dropped=" + mRegistry.counter("render_scale." + scale + ".dropped").get());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package app.cloudgame.web.perf;
+
+import android.os.SystemClock;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Timestamped state transitions (thermal steps, network switches, ...) so they can be lined up with the
+ * metrics of the same session. Holds the most recent {@link #CAPACITY} events.
+ */
+public class SessionEventLog implements SessionSection {
+
+    static final int CAPACITY = 1024;
+
+    private final long mStartUptime;
+    private final long[] mTimes = new long[CAPACITY];
+    private final String[] mNames = new String[CAPACITY];
+    private final String[] mDetails = new String[CAPACITY];
+    private int mNext;
+    private int mSize;
+
+    SessionEventLog(long startUptime) {
+        mStartUptime = startUptime;
+    }
+
+    public synchronized void add(String name, String detail) {
+        mTimes[mNext] = SystemClock.uptimeMillis() - mStartUptime;
+        mNames[mNext] = name;
+        mDetails[mNext] = detail;
+        mNext = (mNext + 1) % CAPACITY;
+        if (mSize < CAPACITY) {
+            mSize++;
+        }
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized void writeTo(Writer out) throws IOException {
+        int first = (mNext - mSize + CAPACITY) % CAPACITY;
+        for (int i = 0; i < mSize; i++) {
+            int index = (first + i) % CAPACITY;
+            JsonWriter writer = MetricsRegistry.newLine(out);
+            writer.beginObject();
+            writer.name("type").value("event");
+            writer.name("t_ms").value(mTimes[index]);
+            writer.name("name").value(mNames[index]);
+            writer.name("detail").value(mDetails[index]);
+            writer.endObject();
+            MetricsRegistry.endLine(writer, out);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package app.cloudgame.web.perf;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public interface SessionSection {
+    /**
+     * Append JSONL records to the session file. Called once on the export thread.
+     */
+    void writeTo(Writer out) throws IOException;
+}
@@ -0,0 +1,125 @@
+package app.cloudgame.web.perf;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Times every main looper message through {@link Looper#setMessageLogging(Printer)}. When a message
+ * runs past the threshold the main thread stack is sampled from a watchdog thread, and the stall is
+ * appended to {@code files/tombstones/stall_<session>.trace} so it ships with the xCrash tombstones.
+ */
+public class StallDetector implements Printer {
+
+    private static final String TAG = "StallDetector";
+    // xCrash writes its tombstones to files/tombstones by default
+    public static final String TOMBSTONE_DIR = "tombstones";
+
+    private final File mFile;
+    private final long mThresholdMs;
+    private final Thread mMainThread = Looper.getMainLooper().getThread();
+    private final Histogram mMessageTime;
+    private final Counter mStalls;
+    private final Runnable mCaptureStack = this::captureStack;
+
+    private HandlerThread mWatchdogThread;
+    private Handler mWatchdog;
+    private long mDispatchStart;
+    // only touched on the watchdog thread
+    private StackTraceElement[] mCapturedStack;
+    private long mCapturedAt;
+
+    public StallDetector(Context context, MetricsRegistry registry, long sessionStart, long thresholdMs) {
+        mFile = new File(new File(context.getFilesDir(), TOMBSTONE_DIR), "stall_" + sessionStart + ".trace");
+        mThresholdMs = thresholdMs;
+        mMessageTime = registry.histogram("main.looper.message", "ms");
+        mStalls = registry.counter("main.stall");
+    }
+
+    public void start() {
+        if (mWatchdogThread != null) {
+            return;
+        }
+        mWatchdogThread = new HandlerThread("StallWatchdog");
+        mWatchdogThread.start();
+        mWatchdog = new Handler(mWatchdogThread.getLooper());
+        Looper.getMainLooper().setMessageLogging(this);
+    }
+
+    public void stop() {
+        if (mWatchdogThread == null) {
+            return;
+        }
+        Looper.getMainLooper().setMessageLogging(null);
+        mWatchdog.removeCallbacks(mCaptureStack);
+        mWatchdogThread.quitSafely();
+        mWatchdogThread = null;
+        mWatchdog = null;
+    }
+
+    @Override
+    public void println(String x) {
+        Handler watchdog = mWatchdog;
+        if (watchdog == null || x == null || x.isEmpty()) {
+            return;
+        }
+        // Looper prints ">>>>> Dispatching to ..." before and "<<<<< Finished to ..." after each message
+        if (x.charAt(0) == '>') {
+            mDispatchStart = SystemClock.uptimeMillis();
+            watchdog.postDelayed(mCaptureStack, mThresholdMs);
+        } else if (x.charAt(0) == '<' && mDispatchStart != 0) {
+            watchdog.removeCallbacks(mCaptureStack);
+            long start = mDispatchStart;
+            long duration = SystemClock.uptimeMillis() - start;
+            mDispatchStart = 0;
+            mMessageTime.record(duration);
+            if (duration >= mThresholdMs) {
+                mStalls.inc();
+                watchdog.post(() -> writeStall(start, duration, x));
+            }
+        }
+    }
+
+    private void captureStack() {
+        mCapturedStack = mMainThread.getStackTrace();
+        mCapturedAt = SystemClock.uptimeMillis();
+    }
+
+    private void writeStall(long start, long duration, String message) {
+        StackTraceElement[] stack = mCapturedStack;
+        long capturedAt = mCapturedAt;
+        mCapturedStack = null;
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        try (Writer writer = new FileWriter(mFile, true)) {
+            long wallStart = System.currentTimeMillis() - (SystemClock.uptimeMillis() - start);
+            writer.write("*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***\n");
+            writer.write("Stall: " + duration + " ms (threshold " + mThresholdMs + " ms)\n");
+            writer.write("Start time: " + new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US).format(new Date(wallStart)) + "\n");
+            writer.write("Message: " + message.substring(message.indexOf(' ') + 1) + "\n");
+            if (stack != null && capturedAt >= start) {
+                writer.write("Main thread stack at +" + (capturedAt - start) + " ms:\n");
+                for (StackTraceElement element : stack) {
+                    writer.write("    at " + element + "\n");
+                }
+            }
+            writer.write("\n");
+        } catch (IOException e) {
+            Log.w(TAG, "write stall failed", e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package app.cloudgame.web.perf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Fixed-size ring of WebRTC stream samples pushed from inject.js. Written once per second by the
+ * bridge thread and read by the overlay on the main thread, so plain synchronization is enough.
+ */
+public class StreamStatsBuffer implements SessionSection {
+
+    public static final int RTT = 0;
+    public static final int JITTER = 1;
+    public static final int LOSS = 2;
+    public static final int FPS = 3;
+    public static final int BITRATE = 4;
+    public static final int FIELD_COUNT = 5;
+
+    private static final String[] FIELD_NAMES = {"rtt_ms", "jitter_ms", "loss_pct", "fps", "kbps"};
+    private static final int CAPACITY = 3600;
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final float[][] mValues = new float[FIELD_COUNT][CAPACITY];
+    private int mHead;
+    private int mSize;
+
+    private final Histogram mRtt;
+    private final Histogram mJitter;
+    private final Gauge[] mLatest = new Gauge[FIELD_COUNT];
+
+    public StreamStatsBuffer(MetricsRegistry registry) {
+        mRtt = registry.histogram("stream.rtt", "ms");
+        mJitter = registry.histogram("stream.jitter", "ms");
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            mLatest[i] = registry.gauge("stream." + FIELD_NAMES[i]);
+        }
+    }
+
+    /**
+     * @param csv {@code "time,rtt,jitter,loss,fps,kbps"}; missing values are empty or negative
+     */
+    public boolean addSample(String csv) {
+        if (csv == null) {
+            return false;
+        }
+        // -1 keeps trailing empty fields, inject.js leaves loss, fps and kbps empty on the first sample
+        String[] parts = csv.split(",", -1);
+        if (parts.length < FIELD_COUNT + 1) {
+            return false;
+        }
+        float[] sample = new float[FIELD_COUNT];
+        long time;
+        try {
+            time = Long.parseLong(parts[0]);
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                sample[i] = parts[i + 1].isEmpty() ? -1 : Float.parseFloat(parts[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        synchronized (this) {
+            mTimes[mHead] = time;
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                mValues[i][mHead] = sample[i];
+            }
+            mHead = (mHead + 1) % CAPACITY;
+            mSize = Math.min(mSize + 1, CAPACITY);
+        }
+        if (sample[RTT] >= 0) {
+            mRtt.record(Math.round(sample[RTT]));
+        }
+        if (sample[JITTER] >= 0) {
+            mJitter.record(Math.round(sample[JITTER]));
+        }
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            mLatest[i].set(sample[i]);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Copies the most recent samples of one field into {@code out}, oldest first.
+     *
+     * @return number of samples copied
+     */
+    public synchronized int copyRecent(int field, float[] out) {
+        int count = Math.min(out.length, mSize);
+        int start = mHead - count;
+        for (int i = 0; i < count; i++) {
+            out[i] = mValues[field][(start + i + CAPACITY) % CAPACITY];
+        }
+        return count;
+    }
+
+    public synchronized float latest(int field) {
+        if (mSize == 0) {
+            return -1;
+        }
+        return mValues[field][(mHead - 1 + CAPACITY) % CAPACITY];
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        JsonWriter writer = MetricsRegistry.newLine(out);
+        writer.beginObject();
+        writer.name("type").value("stream_samples");
+        writer.name("fields").beginArray();
+        writer.value("time");
+        for (String name : FIELD_NAMES) {
+            writer.value(name);
+        }
+        writer.endArray();
+        writer.name("samples").beginArray();
+        synchronized (this) {
+            int start = mHead - mSize;
+            for (int i = 0; i < mSize; i++) {
+                int index = (start + i + CAPACITY) % CAPACITY;
+                writer.beginArray().value(mTimes[index]);
+                for (int f = 0; f < FIELD_COUNT; f++) {
+                    writer.value(mValues[f][index]);
+                }
+                writer.endArray();
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+        MetricsRegistry.endLine(writer, out);
+    }
+}
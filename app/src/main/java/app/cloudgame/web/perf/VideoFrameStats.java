@@ -0,0 +1,136 @@
+package app.cloudgame.web.perf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Per-session frame pacing distributions built from the once-per-second summaries that the
+ * requestVideoFrameCallback module in inject.js sends over the bridge.
+ */
+public class VideoFrameStats implements SessionSection {
+
+    // upper bounds in ms, must match FRAME_BUCKETS in inject.js; the last bucket is the overflow
+    public static final int[] BUCKET_BOUNDS = {4, 8, 12, 17, 20, 25, 34, 50, 67, 100, 200};
+
+    private final long[] mIntervalBuckets = new long[BUCKET_BOUNDS.length + 1];
+    private final long[] mDelayBuckets = new long[BUCKET_BOUNDS.length + 1];
+    private long mFrames;
+    private long mDropped;
+    private long mMissedCallbacks;
+    private volatile float mFps;
+
+    private final Histogram mInterval;
+    private final Histogram mDelay;
+    private final Counter mDroppedCounter;
+    private final Counter mMissedCounter;
+    private final Gauge mFpsGauge;
+
+    public VideoFrameStats(MetricsRegistry registry) {
+        mInterval = registry.histogram("video.present_interval", "ms");
+        mDelay = registry.histogram("video.processing_delay", "ms");
+        mDroppedCounter = registry.counter("video.dropped");
+        mMissedCounter = registry.counter("video.missed_callbacks");
+        mFpsGauge = registry.gauge("video.fps");
+    }
+
+    /**
+     * @param json {@code {"n": frames, "drop": dropped, "missed": missed callbacks, "fps": fps,
+     *             "i": [bucket counts], "d": [bucket counts]}}; {@code drop} counts frames the player
+     *             decoded but did not show, {@code missed} frames presented while no callback ran
+     */
+    public boolean addSummary(String json) {
+        long[] interval;
+        long[] delay;
+        long frames;
+        long dropped;
+        long missed;
+        float fps;
+        // a malformed summary is dropped whole, e.g. an fps of NaN arrives as a JSON null
+        try {
+            JsonObject summary = JsonParser.parseString(json).getAsJsonObject();
+            interval = countsOf(summary.getAsJsonArray("i"));
+            delay = countsOf(summary.getAsJsonArray("d"));
+            frames = summary.has("n") ? summary.get("n").getAsLong() : 0;
+            dropped = summary.has("drop") ? summary.get("drop").getAsLong() : 0;
+            missed = summary.has("missed") ? summary.get("missed").getAsLong() : 0;
+            fps = summary.has("fps") ? summary.get("fps").getAsFloat() : -1;
+        } catch (RuntimeException e) {
+            return false;
+        }
+        synchronized (this) {
+            merge(interval, mIntervalBuckets, mInterval);
+            merge(delay, mDelayBuckets, mDelay);
+            mFrames += frames;
+            mDropped += dropped;
+            mMissedCallbacks += missed;
+        }
+        mDroppedCounter.add(dropped);
+        mMissedCounter.add(missed);
+        if (fps >= 0 && !Float.isInfinite(fps)) {
+            // light smoothing so a single hiccup does not swing consumers such as refresh-rate selection
+            mFps = mFps == 0 ? fps : mFps * 0.7f + fps * 0.3f;
+            mFpsGauge.set(mFps);
+        }
+        return true;
+    }
+
+    private static long[] countsOf(JsonArray array) {
+        if (array == null) {
+            throw new IllegalArgumentException("missing buckets");
+        }
+        long[] counts = new long[Math.min(array.size(), BUCKET_BOUNDS.length + 1)];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = array.get(i).getAsLong();
+        }
+        return counts;
+    }
+
+    /**
+     * @return smoothed presented frame rate of the stream, 0 until the first summary
+     */
+    public float getEstimatedFps() {
+        return mFps;
+    }
+
+    private static void merge(long[] counts, long[] buckets, Histogram histogram) {
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i];
+            buckets[i] += count;
+            // record at the bucket bound; the overflow bucket is recorded at twice the last bound
+            int bound = i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] * 2;
+            histogram.record(bound, count);
+        }
+    }
+
+    @Override
+    public synchronized void writeTo(Writer out) throws IOException {
+        JsonWriter writer = MetricsRegistry.newLine(out);
+        writer.beginObject();
+        writer.name("type").value("video_frames");
+        writer.name("frames").value(mFrames);
+        writer.name("dropped").value(mDropped);
+        writer.name("missed_callbacks").value(mMissedCallbacks);
+        writer.name("bounds_ms").beginArray();
+        for (int bound : BUCKET_BOUNDS) {
+            writer.value(bound);
+        }
+        writer.endArray();
+        writer.name("present_interval").beginArray();
+        for (long count : mIntervalBuckets) {
+            writer.value(count);
+        }
+        writer.endArray();
+        writer.name("processing_delay").beginArray();
+        for (long count : mDelayBuckets) {
+            writer.value(count);
+        }
+        writer.endArray();
+        writer.endObject();
+        MetricsRegistry.endLine(writer, out);
+    }
+}
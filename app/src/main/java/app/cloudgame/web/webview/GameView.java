@@ -1,19 +1,15 @@
 package app.cloudgame.web.webview;
 
 import android.annotation.SuppressLint;
-import android.app.Dialog;
 import android.content.Context;
-import android.content.Intent;
 import android.graphics.Bitmap;
 import android.os.Message;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.Window;
-import android.view.WindowManager;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.WebChromeClient;
-import android.webkit.WebResourceRequest;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -21,10 +17,11 @@ import android.webkit.WebViewClient;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.WeakHashMap;
-
+import app.cloudgame.core.PageChannel;
+import app.cloudgame.core.ScriptSink;
 import app.cloudgame.web.Configuration;
-import app.cloudgame.web.WebActivity;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfTrace;
 
 public class GameView extends WebView {
 
@@ -33,6 +30,12 @@ public class GameView extends WebView {
     private IWebPageCallback webCallback;
     private WebContainer container;
     private ChromeWebViewClient chromeWebViewClient;
+    private PageChannel pageChannel;
+    private int statsIntervalMs;
+    private boolean videoFrameStats;
+    private int renderScale = 100;
+    private int renderScaleCap = 100;
+    private boolean renderProcessGone;
 
     public GameView(@NonNull Context context) {
         super(context);
@@ -67,6 +70,12 @@ public class GameView extends WebView {
         }
     }
 
+    @Override
+    public void destroy() {
+        chromeWebViewClient.release();
+        super.destroy();
+    }
+
     public JSBridge getJsBridge() {
         return jsBridge;
     }
@@ -75,6 +84,20 @@ public class GameView extends WebView {
         return container;
     }
 
+    /**
+     * Every script sent to the page goes through this.
+     */
+    public PageChannel getPageChannel() {
+        return pageChannel;
+    }
+
+    /**
+     * True once the renderer this view was bound to has died; the view can only be destroyed then.
+     */
+    public boolean isRenderProcessGone() {
+        return renderProcessGone;
+    }
+
     @SuppressLint("SetJavaScriptEnabled")
     private void setup() {
         if (hasSetup) {
@@ -82,14 +105,15 @@ public class GameView extends WebView {
         }
         hasSetup = true;
         setFocusableInTouchMode(true);
+        pageChannel = new PageChannel(new WebViewScriptSink(this));
         WebSettings webSettings = getSettings();
         webSettings.setJavaScriptEnabled(true);
-        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
         webSettings.setDomStorageEnabled(true);
         webSettings.setDatabaseEnabled(true);
         webSettings.setJavaScriptCanOpenWindowsAutomatically(true);
         webSettings.setSupportMultipleWindows(true);
 
+        applyProfile(WebProfile.getDefault());
         setDesktopMode(true);
         setWebViewClient(new GameWebViewClient());
 
@@ -100,6 +124,123 @@ public class GameView extends WebView {
         addJavascriptInterface(jsBridge, "CG_BRIDGE");
     }
 
+    /**
+     * Applies a performance profile; call before loadUrl so the first navigation already uses it.
+     */
+    public void applyProfile(WebProfile profile) {
+        WebSettings webSettings = getSettings();
+        webSettings.setCacheMode(profile.cacheMode);
+        webSettings.setOffscreenPreRaster(profile.offscreenPreRaster);
+        webSettings.setLoadsImagesAutomatically(profile.loadsImagesAutomatically);
+        webSettings.setSafeBrowsingEnabled(profile.safeBrowsing);
+        webSettings.setMixedContentMode(profile.mixedContentMode);
+        setRendererPriorityPolicy(profile.rendererPriority, profile.rendererWaivedWhenNotVisible);
+    }
+
+    /**
+     * Starts WebRTC stats sampling in inject.js; 0 stops it.
+     */
+    public void setStatsInterval(int intervalMs) {
+        if (statsIntervalMs == intervalMs) {
+            return;
+        }
+        statsIntervalMs = intervalMs;
+        pageChannel.statsInterval(intervalMs);
+    }
+
+    public int getStatsInterval() {
+        return statsIntervalMs;
+    }
+
+    /**
+     * Toggles the requestVideoFrameCallback pacing module in inject.js.
+     */
+    public void setVideoFrameStats(boolean enabled) {
+        if (videoFrameStats == enabled) {
+            return;
+        }
+        videoFrameStats = enabled;
+        pageChannel.videoFrameStats(enabled);
+    }
+
+    public boolean isVideoFrameStats() {
+        return videoFrameStats;
+    }
+
+    /**
+     * Lays the page out at {@code percent}% of the CSS viewport width. Overview mode then zooms it back
+     * to fill the view, so canvas and video layers sized from CSS pixels get smaller backing stores and
+     * the compositor upscales them.
+     */
+    public void setRenderScale(int percent) {
+        int effective = getEffectiveRenderScale();
+        renderScale = Math.max(10, Math.min(100, percent));
+        onRenderScaleChanged(effective);
+    }
+
+    /**
+     * The requested scale, which may be above the cap in effect.
+     */
+    public int getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * Upper bound on the render scale, e.g. while the device is hot. Scales requested above it are
+     * laid out at the cap and apply again once it is lifted.
+     */
+    public void setRenderScaleCap(int percent) {
+        int effective = getEffectiveRenderScale();
+        renderScaleCap = Math.max(10, Math.min(100, percent));
+        onRenderScaleChanged(effective);
+    }
+
+    public int getEffectiveRenderScale() {
+        return Math.min(renderScale, renderScaleCap);
+    }
+
+    private void onRenderScaleChanged(int previous) {
+        if (getEffectiveRenderScale() != previous) {
+            pageChannel.viewportWidth(getScaledViewportWidth());
+        }
+    }
+
+    /**
+     * Forwards an {@code onTrimMemory} level to inject.js, which drops what it caches and re-dispatches it
+     * to the page as a {@code cgtrimmemory} event.
+     */
+    public void trimMemory(int level) {
+        pageChannel.trimMemory(level);
+    }
+
+    private boolean hasPageSettings() {
+        return statsIntervalMs > 0 || videoFrameStats || getEffectiveRenderScale() < 100;
+    }
+
+    // inject.js starts from scratch on every navigation, so this is re-applied after page start injection
+    private void applyPageSettings() {
+        pageChannel.pageSettings(statsIntervalMs, videoFrameStats, getScaledViewportWidth());
+    }
+
+    // 0 leaves the page's own viewport untouched
+    private int getScaledViewportWidth() {
+        int scale = getEffectiveRenderScale();
+        if (scale >= 100) {
+            return 0;
+        }
+        DisplayMetrics dm = getResources().getDisplayMetrics();
+        int width = getWidth() > 0 ? getWidth() : dm.widthPixels;
+        return Math.round(width / dm.density * scale / 100f);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int ow, int oh) {
+        super.onSizeChanged(w, h, ow, oh);
+        if (getEffectiveRenderScale() < 100 && w != ow) {
+            pageChannel.viewportWidth(getScaledViewportWidth());
+        }
+    }
+
     public void setDesktopMode(boolean enabled) {
         getSettings().setUserAgentString(Configuration.getConfiguration().getUserAgent());
         getSettings().setUseWideViewPort(enabled);
@@ -118,6 +259,8 @@ public class GameView extends WebView {
 
     private static class GameWebViewClient extends WebViewClient {
 
+        private static final String TRACE_INJECT = "page.inject";
+
         private GameWebViewClient() {
             super();
             setWebContentsDebuggingEnabled(true);
@@ -132,10 +275,30 @@ public class GameView extends WebView {
                     gameView.webCallback.onWebPageLoadStart(view, url);
                 }
             }
+            long start = System.nanoTime();
+            boolean traced = PerfTrace.begin(PerfTrace.LEVEL_INFO, "GameView.injectPageStartScripts");
+            // covers posting every script until the last one has been evaluated by the page
+            int cookie = PerfTrace.beginAsync(PerfTrace.LEVEL_INFO, TRACE_INJECT);
+            ScriptSink sink = view instanceof GameView ? ((GameView) view).pageChannel : new WebViewScriptSink(view);
             String[] scripts = Configuration.getConfiguration().getPageStartScripts();
-            for (String script: scripts) {
-                view.evaluateJavascript(script, null);
+            for (int i = 0; i < scripts.length; i++) {
+                ScriptSink.ResultCallback cb = null;
+                if (cookie != 0 && i == scripts.length - 1) {
+                    cb = v -> PerfTrace.endAsync(TRACE_INJECT, cookie);
+                }
+                sink.evaluate(scripts[i], cb);
             }
+            if (scripts.length == 0) {
+                PerfTrace.endAsync(TRACE_INJECT, cookie);
+            }
+            if (view instanceof GameView) {
+                GameView gameView = (GameView) view;
+                if (gameView.hasPageSettings()) {
+                    gameView.applyPageSettings();
+                }
+            }
+            PerfTrace.end(traced);
+            MetricsRegistry.getRegistry().histogram("page.inject", "us").record((System.nanoTime() - start) / 1000);
         }
 
         @Override
@@ -148,11 +311,26 @@ public class GameView extends WebView {
                 }
             }
         }
+
+        // returning false here kills the app along with the renderer
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            if (!(view instanceof GameView)) {
+                return true;
+            }
+            GameView gameView = (GameView) view;
+            gameView.renderProcessGone = true;
+            // views without a callback are pooled spares, their owner destroys them
+            if (gameView.webCallback != null) {
+                gameView.webCallback.onRenderProcessGone(gameView, detail.didCrash(), detail.rendererPriorityAtExit());
+            }
+            return true;
+        }
     }
 
     private static class ChromeWebViewClient extends WebChromeClient {
-        private final WeakHashMap<WebView,Dialog> mDialogWeakMap = new WeakHashMap<>();
         private final GameView webView;
+        private PopupWindowManager popupWindowManager;
 
         private View customView;
         private WebChromeClient.CustomViewCallback customViewCallback;
@@ -174,7 +352,7 @@ public class GameView extends WebView {
             customViewCallback = callback;
 
             webView.getContainer().notifyLockStateWithCallback(false, v -> {
-                webView.getContainer().releasePointerCapture();
+                webView.getContainer().exitPointerLock();
                 webView.getContainer().removeView(webView);
                 webView.getContainer().addView(
                         customView,
@@ -189,87 +367,34 @@ public class GameView extends WebView {
                 return;
             }
 
-            webView.getContainer().releasePointerCapture();
+            webView.getContainer().exitPointerLock();
             webView.getContainer().removeView(customView);
-            webView.getContainer().addView(webView);
+            // index 0 keeps the stats and trackpad overlays above the page
+            webView.getContainer().addView(webView, 0);
 
             customView = null;
             customViewCallback.onCustomViewHidden();
         }
 
-        @SuppressLint("SetJavaScriptEnabled")
-        private static void setupWindowWebView(WebView webView, Dialog dialog) {
-            WebSettings webSettings = webView.getSettings();
-            webSettings.setJavaScriptEnabled(true);
-            webSettings.setDomStorageEnabled(true);
-            webSettings.setDatabaseEnabled(true);
-            webView.setWebViewClient(new WebViewClient() {
-                @Override
-                public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-                    String scheme = request.getUrl().getScheme();
-                    if (!request.getUrl().toString().contains("mihoyo.com")) {
-                        Intent intent = new Intent(view.getContext(), WebActivity.class);
-                        intent.putExtra(WebActivity.URL, request.getUrl().toString());
-                        webView.getContext().startActivity(intent);
-                        dialog.dismiss();
-                        return true;
-                    }
-                    if ("https".equals(scheme) || "http".equals(scheme)) {
-                        return false;
-                    }
-                    return super.shouldOverrideUrlLoading(view, request);
-                }
-            });
-
-            webView.setWebChromeClient(new WebChromeClient(){
-                @Override
-                public void onCloseWindow(WebView window) {
-                    if (window == webView && dialog != null && dialog.isShowing()) {
-                        dialog.dismiss();
-                    }
-                }
-            });
-        }
-
         @Override
         public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, Message resultMsg) {
-            if (resultMsg != null && resultMsg.obj instanceof WebView.WebViewTransport) {
-                WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
-                WebView webView = new WebView(view.getContext());
-                Dialog dialog = new Dialog(view.getContext());
-                dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
-                setupWindowWebView(webView, dialog);
-                mDialogWeakMap.put(webView, dialog);
-                dialog.setContentView(webView);
-
-                WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
-                Window window = dialog.getWindow();
-                if (window != null) {
-                    lp.copyFrom(dialog.getWindow().getAttributes());
-                    DisplayMetrics dm = view.getContext().getResources().getDisplayMetrics();
-                    lp.width = (int) (dm.widthPixels * 0.7);
-                    lp.height = (int) (dm.heightPixels * 0.9);
-                    lp.horizontalMargin = 0;
-                    lp.verticalMargin = 0;
-                    window.setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
-                            WindowManager.LayoutParams.FLAG_FULLSCREEN);
-                    window.addFlags(WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN);
-                }
-                transport.setWebView(webView);
-                resultMsg.sendToTarget();
-                dialog.show();
-                if (window != null) {
-                    window.setAttributes(lp);
-                }
+            if (popupWindowManager == null) {
+                popupWindowManager = new PopupWindowManager(view.getContext());
             }
-            return true;
+            return popupWindowManager.open(view, resultMsg);
         }
 
         @Override
         public void onCloseWindow(WebView window) {
-            Dialog dialog = mDialogWeakMap.get(window);
-            if (dialog != null) {
-                dialog.dismiss();
+            if (popupWindowManager != null) {
+                popupWindowManager.close(window);
+            }
+        }
+
+        private void release() {
+            if (popupWindowManager != null) {
+                popupWindowManager.release();
+                popupWindowManager = null;
             }
         }
     }
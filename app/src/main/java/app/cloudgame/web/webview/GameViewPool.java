@@ -0,0 +1,61 @@
+package app.cloudgame.web.webview;
+
+import android.content.Context;
+import android.os.Looper;
+
+import app.cloudgame.web.perf.MetricsRegistry;
+
+/**
+ * Keeps one configured {@link GameView} ready so a session can be rebuilt without paying for WebView
+ * construction when the renderer process dies. Nothing is built up front: the first rebuild creates
+ * its view directly, and {@link #prewarm()} is called once it has recovered, building the spare on an
+ * idle pass of the main thread. The spare never navigates until it is handed out.
+ */
+public class GameViewPool {
+
+    private final Context mContext;
+    private GameView mSpare;
+    private boolean mScheduled;
+    private boolean mReleased;
+
+    // the Activity, popups opened by the game are Dialogs built from the view's context
+    public GameViewPool(Context context) {
+        mContext = context;
+    }
+
+    public void prewarm() {
+        if (mSpare != null || mScheduled || mReleased) {
+            return;
+        }
+        mScheduled = true;
+        Looper.myQueue().addIdleHandler(() -> {
+            mScheduled = false;
+            if (!mReleased && mSpare == null) {
+                mSpare = new GameView(mContext);
+            }
+            return false;
+        });
+    }
+
+    public GameView obtain() {
+        GameView view = mSpare;
+        mSpare = null;
+        // a spare created before the crash may have been bound to the same renderer
+        if (view != null && !view.isRenderProcessGone()) {
+            MetricsRegistry.getRegistry().counter("renderer.pool_hit").inc();
+            return view;
+        }
+        if (view != null) {
+            view.destroy();
+        }
+        return new GameView(mContext);
+    }
+
+    public void release() {
+        mReleased = true;
+        if (mSpare != null) {
+            mSpare.destroy();
+            mSpare = null;
+        }
+    }
+}
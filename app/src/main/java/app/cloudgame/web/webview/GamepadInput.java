@@ -0,0 +1,196 @@
+package app.cloudgame.web.webview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import app.cloudgame.core.GamepadMapper;
+import app.cloudgame.core.KeyMap;
+import app.cloudgame.core.ScanCodes;
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.MetricsRegistry;
+
+/**
+ * Plays a gamepad as mouse and keyboard while the page holds the pointer, for pages that never read the
+ * Gamepad API. Axes go through a {@link GamepadMapper} ticked at {@link GamepadMapper#TICK_HZ} on the
+ * main thread while the right stick is deflected, so its movement joins real mouse movement in the
+ * container's pipeline. Buttons the entry's keymap leaves alone are pressed as the keys of
+ * {@link #defaultKeyOf}.
+ */
+final class GamepadInput implements GamepadMapper.Output, Runnable {
+
+    private static final int[] STICK_KEYS = {
+            KeyEvent.KEYCODE_W, KeyEvent.KEYCODE_A, KeyEvent.KEYCODE_S, KeyEvent.KEYCODE_D
+    };
+    private static final int[] HAT_KEYS = {
+            KeyEvent.KEYCODE_DPAD_UP, KeyEvent.KEYCODE_DPAD_LEFT, KeyEvent.KEYCODE_DPAD_DOWN, KeyEvent.KEYCODE_DPAD_RIGHT
+    };
+    private static final float DEAD_ZONE = 0.15f;
+
+    private final WebContainer mContainer;
+    private final GamepadMapper mMapper = new GamepadMapper(this, STICK_KEYS, HAT_KEYS);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // key each gamepad button was pressed as, so it is released even if capture is lost in between
+    private final int[] mPressedAs = new int[KeyMap.TABLE_SIZE];
+    private final long[] mDownTimes = new long[KeyMap.TABLE_SIZE];
+    private int mDeviceId = -1;
+    private boolean mTicking;
+    private long mLastTick;
+    private long mNextTick;
+
+    private final Counter mTicks = MetricsRegistry.getRegistry().counter("input.gamepad.tick");
+
+    GamepadInput(WebContainer container) {
+        mContainer = container;
+    }
+
+    /**
+     * @return true when the event was a gamepad axis update and has been consumed
+     */
+    boolean onMotionEvent(MotionEvent event) {
+        if ((event.getSource() & InputDevice.SOURCE_JOYSTICK) != InputDevice.SOURCE_JOYSTICK
+                || event.getActionMasked() != MotionEvent.ACTION_MOVE) {
+            return false;
+        }
+        if (event.getDeviceId() != mDeviceId) {
+            mDeviceId = event.getDeviceId();
+            mMapper.setDeadZone(deadZoneOf(event));
+        }
+        mMapper.setLeftStick(event.getAxisValue(MotionEvent.AXIS_X), event.getAxisValue(MotionEvent.AXIS_Y));
+        mMapper.setHat(event.getAxisValue(MotionEvent.AXIS_HAT_X), event.getAxisValue(MotionEvent.AXIS_HAT_Y));
+        // controllers report the triggers on one of two axis pairs
+        mMapper.setTriggers(
+                Math.max(event.getAxisValue(MotionEvent.AXIS_LTRIGGER), event.getAxisValue(MotionEvent.AXIS_BRAKE)),
+                Math.max(event.getAxisValue(MotionEvent.AXIS_RTRIGGER), event.getAxisValue(MotionEvent.AXIS_GAS)));
+        mMapper.setRightStick(event.getAxisValue(MotionEvent.AXIS_Z), event.getAxisValue(MotionEvent.AXIS_RZ));
+        if (!mTicking) {
+            mTicking = true;
+            mLastTick = SystemClock.uptimeMillis();
+            mNextTick = mLastTick;
+            run();
+        }
+        return true;
+    }
+
+    private static float deadZoneOf(MotionEvent event) {
+        InputDevice device = event.getDevice();
+        InputDevice.MotionRange range = device == null ? null : device.getMotionRange(MotionEvent.AXIS_Z, event.getSource());
+        return range == null ? DEAD_ZONE : Math.max(DEAD_ZONE, range.getFlat());
+    }
+
+    @Override
+    public void run() {
+        long now = SystemClock.uptimeMillis();
+        mTicks.inc();
+        // moved by the time really passed, a late tick makes up for the one it missed
+        if (!mMapper.tick(now - mLastTick)) {
+            mTicking = false;
+            return;
+        }
+        mLastTick = now;
+        mNextTick = Math.max(mNextTick + GamepadMapper.TICK_MS, now + 1);
+        mHandler.postAtTime(this, mNextTick);
+    }
+
+    /**
+     * @return true when the event was a gamepad button and has been sent on as a key
+     */
+    boolean onKeyEvent(KeyEvent event, boolean captured) {
+        int code = event.getKeyCode();
+        int action = event.getAction();
+        if (code < 0 || code >= KeyMap.TABLE_SIZE || (action != KeyEvent.ACTION_DOWN && action != KeyEvent.ACTION_UP)) {
+            return false;
+        }
+        if (action == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
+            mPressedAs[code] = captured && KeyEvent.isGamepadButton(code) ? defaultKeyOf(code) : 0;
+        }
+        int mapped = mPressedAs[code];
+        if (mapped == 0) {
+            return false;
+        }
+        if (action == KeyEvent.ACTION_UP) {
+            mPressedAs[code] = 0;
+        }
+        if (event.getRepeatCount() == 0) {
+            sendKey(mapped, action == KeyEvent.ACTION_DOWN);
+        }
+        return true;
+    }
+
+    /**
+     * Keys for the default game, 0 leaves the button to the page.
+     */
+    static int defaultKeyOf(int button) {
+        switch (button) {
+            case KeyEvent.KEYCODE_BUTTON_A:
+                return KeyEvent.KEYCODE_SPACE;
+            case KeyEvent.KEYCODE_BUTTON_B:
+                return KeyEvent.KEYCODE_SHIFT_LEFT;
+            case KeyEvent.KEYCODE_BUTTON_X:
+                return KeyEvent.KEYCODE_F;
+            case KeyEvent.KEYCODE_BUTTON_Y:
+                return KeyEvent.KEYCODE_E;
+            case KeyEvent.KEYCODE_BUTTON_L1:
+                return KeyEvent.KEYCODE_Q;
+            case KeyEvent.KEYCODE_BUTTON_R1:
+                return KeyEvent.KEYCODE_R;
+            case KeyEvent.KEYCODE_BUTTON_THUMBL:
+                return KeyEvent.KEYCODE_CTRL_LEFT;
+            case KeyEvent.KEYCODE_BUTTON_THUMBR:
+                return KeyEvent.KEYCODE_TAB;
+            case KeyEvent.KEYCODE_BUTTON_START:
+                return KeyEvent.KEYCODE_ESCAPE;
+            case KeyEvent.KEYCODE_BUTTON_SELECT:
+                return KeyEvent.KEYCODE_M;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void onMove(float dx, float dy) {
+        if (mContainer.hasPointerCapture()) {
+            mContainer.moveBy(dx, dy);
+        }
+    }
+
+    @Override
+    public void onKey(int keyCode, boolean down) {
+        sendKey(keyCode, down);
+    }
+
+    @Override
+    public void onMouseButton(int button, boolean down) {
+        mContainer.pressMouseButton(button, down);
+    }
+
+    private void sendKey(int keyCode, boolean down) {
+        long now = SystemClock.uptimeMillis();
+        if (down) {
+            mDownTimes[keyCode] = now;
+        }
+        mContainer.dispatchMappedKeyEvent(new KeyEvent(mDownTimes[keyCode], now,
+                down ? KeyEvent.ACTION_DOWN : KeyEvent.ACTION_UP, keyCode, 0,
+                KeyEvent.normalizeMetaState(down ? KeyRemapper.metaOf(keyCode) : 0), KeyCharacterMap.VIRTUAL_KEYBOARD,
+                ScanCodes.of(keyCode), 0, InputDevice.SOURCE_KEYBOARD));
+    }
+
+    /**
+     * Releases everything the gamepad holds and stops ticking, e.g. when the page loses the pointer.
+     */
+    void reset() {
+        mHandler.removeCallbacks(this);
+        mTicking = false;
+        mMapper.reset();
+        for (int code = 0; code < mPressedAs.length; code++) {
+            if (mPressedAs[code] != 0) {
+                sendKey(mPressedAs[code], false);
+                mPressedAs[code] = 0;
+            }
+        }
+    }
+}
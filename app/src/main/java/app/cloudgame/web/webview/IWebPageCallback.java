@@ -5,4 +5,5 @@ import android.webkit.WebView;
 public interface IWebPageCallback {
     void onWebPageLoadEnd(WebView webView, String url);
     void onWebPageLoadStart(WebView webView, String url);
+    void onRenderProcessGone(GameView gameView, boolean didCrash, int rendererPriorityAtExit);
 }
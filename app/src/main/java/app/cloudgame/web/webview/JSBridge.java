@@ -1,29 +1,64 @@
 package app.cloudgame.web.webview;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.webkit.JavascriptInterface;
 import android.webkit.WebView;
 import android.widget.Toast;
 
-import com.google.gson.Gson;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.Gauge;
+import app.cloudgame.web.perf.Histogram;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfSession;
+import app.cloudgame.web.perf.PerfTrace;
 
 public class JSBridge {
 
     private static final String TAG = "GameViewJsBridge";
+    private static final String TRACE_UI_HOP = "bridge.uiHop";
 
     private final GameView mWebView;
-    private final Gson mGson;
     private static final String SUCCESS = "{\"code\": 0}";
-    private String lastLockEleId = "";
+    // the page picks the method name, only these get a counter of their own
+    private static final Set<String> KNOWN_METHODS = new HashSet<>(Arrays.asList(
+            "toast", "requestPointerLock", "exitPointerLock", "streamStats", "videoFrameStats", "registryStats"));
+
+    private final Counter callCounter = MetricsRegistry.getRegistry().counter("bridge.call");
+    private final Counter callbackCounter = MetricsRegistry.getRegistry().counter("bridge.callback");
+    private final Histogram uiDelay = MetricsRegistry.getRegistry().histogram("bridge.ui_delay", "us");
+    private final Gauge registryElements = MetricsRegistry.getRegistry().gauge("page.registry.elements");
+    private final Gauge registryCallbacks = MetricsRegistry.getRegistry().gauge("page.registry.callbacks");
+    private final Counter expiredCallbacks = MetricsRegistry.getRegistry().counter("page.callback.expired");
+    // per method call counters, looked up once so a call does not build the metric name
+    private final ConcurrentHashMap<String, Counter> methodCounters = new ConcurrentHashMap<>();
 
     public JSBridge(GameView webView) {
         this.mWebView = webView;
-        this.mGson = new Gson();
     }
 
     @JavascriptInterface
     public void evalMethod(String method, String params, String callbackId) {
+        boolean traced = PerfTrace.begin(PerfTrace.LEVEL_INFO, "JSBridge.evalMethod");
+        try {
+            dispatch(method, params, callbackId);
+        } finally {
+            PerfTrace.end(traced);
+        }
+    }
+
+    private void dispatch(String method, String params, String callbackId) {
+        callCounter.inc();
+        if (!KNOWN_METHODS.contains(method)) {
+            return;
+        }
+        methodCounters.computeIfAbsent(method, m -> MetricsRegistry.getRegistry().counter("bridge.call." + m)).inc();
         if ("toast".equals(method)) {
             runInUiThread(() -> {
                 Toast.makeText(mWebView.getContext(), params, Toast.LENGTH_LONG).show();
@@ -33,6 +68,15 @@ public class JSBridge {
             requestPointerLock(callbackId, params);
         } else if ("exitPointerLock".equals(method)) {
             exitPointerLock(callbackId, params);
+        } else if ("streamStats".equals(method)) {
+            onStreamStats(params);
+        } else if ("videoFrameStats".equals(method)) {
+            PerfSession session = PerfSession.current();
+            if (session != null) {
+                session.getVideoFrameStats().addSummary(params);
+            }
+        } else if ("registryStats".equals(method)) {
+            onRegistryStats(params);
         }
     }
 
@@ -40,19 +84,61 @@ public class JSBridge {
         if (TextUtils.isEmpty(callbackId)) {
             return;
         }
-        String script = String.format("window.CG_EVAL_CALLBACK(%s, %s)", mGson.toJson(callbackId), mGson.toJson(result));
-        mWebView.evaluateJavascript(script, null);
+        callbackCounter.inc();
+        mWebView.getPageChannel().callback(callbackId, result);
     }
 
     private void runInUiThread(Runnable runnable) {
-        mWebView.getContainer().post(runnable);
+        final long posted = SystemClock.elapsedRealtimeNanos();
+        // JavaBridge thread → main looper hop
+        final int cookie = PerfTrace.beginAsync(PerfTrace.LEVEL_INFO, TRACE_UI_HOP);
+        mWebView.getContainer().post(() -> {
+            PerfTrace.endAsync(TRACE_UI_HOP, cookie);
+            uiDelay.record((SystemClock.elapsedRealtimeNanos() - posted) / 1000);
+            boolean traced = PerfTrace.begin(PerfTrace.LEVEL_INFO, "JSBridge.runInUiThread");
+            try {
+                runnable.run();
+            } finally {
+                PerfTrace.end(traced);
+            }
+        });
+    }
+
+    // runs on the JavaBridge thread; the overlay only needs an invalidate
+    private void onStreamStats(String sample) {
+        PerfSession session = PerfSession.current();
+        if (session == null || !session.getStreamStats().addSample(sample)) {
+            return;
+        }
+        WebContainer container = mWebView.getContainer();
+        StreamStatsOverlay overlay = container == null ? null : container.getStatsOverlay();
+        if (overlay != null) {
+            overlay.onSample();
+        }
+    }
+
+    // "elements,callbacks,expired" from inject.js, sent when it changes; expired counts since the last one
+    private void onRegistryStats(String stats) {
+        if (stats == null) {
+            return;
+        }
+        String[] parts = stats.split(",");
+        if (parts.length < 3) {
+            return;
+        }
+        try {
+            registryElements.set(Integer.parseInt(parts[0]));
+            registryCallbacks.set(Integer.parseInt(parts[1]));
+            expiredCallbacks.add(Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "bad registry stats " + stats);
+        }
     }
 
     private void requestPointerLock(String callbackId, String eleId) {
         Log.d(TAG, "request pointer lock");
         runInUiThread(() -> {
-            lastLockEleId = eleId;
-            mWebView.getContainer().requestPointerCapture();
+            mWebView.getContainer().requestPointerLock(eleId);
             evalCallback(callbackId, SUCCESS);
         });
     }
@@ -60,16 +146,8 @@ public class JSBridge {
     private void exitPointerLock(String callbackId, String eleId) {
         Log.d(TAG, "request exit pointer lock");
         runInUiThread(() -> {
-            mWebView.getContainer().releasePointerCapture();
+            mWebView.getContainer().exitPointerLock();
             evalCallback(callbackId, SUCCESS);
         });
     }
-
-    public String getLastLockEleId() {
-        return lastLockEleId;
-    }
-
-    public Gson getGson() {
-        return mGson;
-    }
 }
@@ -0,0 +1,146 @@
+package app.cloudgame.web.webview;
+
+import android.view.KeyEvent;
+
+import app.cloudgame.core.KeyMacro;
+import app.cloudgame.core.KeyMap;
+import app.cloudgame.core.ScanCodes;
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.MetricsRegistry;
+
+/**
+ * Applies an entry's {@link KeyMap} to the key events reaching {@link WebContainer} while the page holds
+ * the pointer. Looking a key up is a table read; only keys that change are copied, as the public
+ * KeyEvent API has no way to modify one. A key keeps the mapping it was pressed with until released,
+ * even when capture is lost in between.
+ */
+public final class KeyRemapper {
+
+    private final WebContainer mContainer;
+    private final KeyMap mKeyMap;
+    private final MacroPlayer mMacroPlayer;
+    // what each key was mapped to when pressed, the key itself when not pressed or unmapped
+    private final int[] mPressedAs = new int[KeyMap.TABLE_SIZE];
+    // scan codes seen on real events, preferred over the generic table for synthesized ones
+    private final int[] mScanCodes = new int[KeyMap.TABLE_SIZE];
+    // meta state added by keys mapped to modifiers, and removed for modifiers mapped away
+    private int mAddedMeta;
+    private int mRemovedMeta;
+
+    private final Counter mRemapped = MetricsRegistry.getRegistry().counter("input.key.remap");
+    private final Counter mMacros = MetricsRegistry.getRegistry().counter("input.key.macro");
+
+    KeyRemapper(WebContainer container, KeyMap keyMap) {
+        mContainer = container;
+        mKeyMap = keyMap;
+        mMacroPlayer = new MacroPlayer(this);
+        for (int i = 0; i < mPressedAs.length; i++) {
+            mPressedAs[i] = i;
+        }
+    }
+
+    /**
+     * Compiles a keymap written with the platform's key names.
+     *
+     * @throws IllegalArgumentException naming the line that does not parse
+     */
+    public static KeyMap compile(String source) {
+        return KeyMap.parse(source, name -> {
+            int code = KeyEvent.keyCodeFromString("KEYCODE_" + name);
+            return code == KeyEvent.KEYCODE_UNKNOWN ? -1 : code;
+        });
+    }
+
+    /**
+     * @return true when the event was consumed or sent on in changed form
+     */
+    boolean dispatch(KeyEvent event, boolean captured) {
+        int code = event.getKeyCode();
+        int action = event.getAction();
+        if (code < 0 || code >= KeyMap.TABLE_SIZE || (action != KeyEvent.ACTION_DOWN && action != KeyEvent.ACTION_UP)) {
+            return false;
+        }
+        if (event.getScanCode() != 0) {
+            mScanCodes[code] = event.getScanCode();
+        }
+        if (action == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
+            int mapped = captured ? mKeyMap.lookup(code) : code;
+            mPressedAs[code] = mapped;
+            if (mapped != code && !KeyMap.isMacro(mapped)) {
+                mRemovedMeta |= metaOf(code);
+                mAddedMeta |= metaOf(mapped);
+            }
+        }
+        int mapped = mPressedAs[code];
+        if (action == KeyEvent.ACTION_UP) {
+            mPressedAs[code] = code;
+            if (mapped != code && !KeyMap.isMacro(mapped)) {
+                mRemovedMeta &= ~metaOf(code);
+                mAddedMeta &= ~metaOf(mapped);
+            }
+        }
+        if (mapped == code) {
+            if (mAddedMeta == 0 && mRemovedMeta == 0) {
+                return false;
+            }
+            return mContainer.dispatchMappedKeyEvent(copy(event, code));
+        }
+        if (KeyMap.isMacro(mapped)) {
+            if (action == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
+                mMacros.inc();
+                mMacroPlayer.play(mKeyMap.getMacro(mapped));
+            }
+            return true;
+        }
+        if (mapped == KeyMap.NONE) {
+            return true;
+        }
+        mRemapped.inc();
+        mContainer.dispatchMappedKeyEvent(copy(event, mapped));
+        return true;
+    }
+
+    private KeyEvent copy(KeyEvent event, int keyCode) {
+        int meta = (event.getMetaState() & ~mRemovedMeta) | mAddedMeta;
+        return new KeyEvent(event.getDownTime(), event.getEventTime(), event.getAction(), keyCode,
+                event.getRepeatCount(), KeyEvent.normalizeMetaState(meta), event.getDeviceId(),
+                scanCodeOf(keyCode), event.getFlags(), event.getSource());
+    }
+
+    int scanCodeOf(int keyCode) {
+        int learned = mScanCodes[keyCode];
+        return learned != 0 ? learned : ScanCodes.of(keyCode);
+    }
+
+    // runs on the main thread, macros post their events here
+    void dispatchMacroEvent(KeyEvent event) {
+        mContainer.dispatchMappedKeyEvent(event);
+    }
+
+    void release() {
+        mMacroPlayer.release();
+    }
+
+    static int metaOf(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_SHIFT_LEFT:
+                return KeyEvent.META_SHIFT_ON | KeyEvent.META_SHIFT_LEFT_ON;
+            case KeyEvent.KEYCODE_SHIFT_RIGHT:
+                return KeyEvent.META_SHIFT_ON | KeyEvent.META_SHIFT_RIGHT_ON;
+            case KeyEvent.KEYCODE_CTRL_LEFT:
+                return KeyEvent.META_CTRL_ON | KeyEvent.META_CTRL_LEFT_ON;
+            case KeyEvent.KEYCODE_CTRL_RIGHT:
+                return KeyEvent.META_CTRL_ON | KeyEvent.META_CTRL_RIGHT_ON;
+            case KeyEvent.KEYCODE_ALT_LEFT:
+                return KeyEvent.META_ALT_ON | KeyEvent.META_ALT_LEFT_ON;
+            case KeyEvent.KEYCODE_ALT_RIGHT:
+                return KeyEvent.META_ALT_ON | KeyEvent.META_ALT_RIGHT_ON;
+            case KeyEvent.KEYCODE_META_LEFT:
+                return KeyEvent.META_META_ON | KeyEvent.META_META_LEFT_ON;
+            case KeyEvent.KEYCODE_META_RIGHT:
+                return KeyEvent.META_META_ON | KeyEvent.META_META_RIGHT_ON;
+            default:
+                return 0;
+        }
+    }
+}
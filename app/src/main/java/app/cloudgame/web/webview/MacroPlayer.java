@@ -0,0 +1,123 @@
+package app.cloudgame.web.webview;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import app.cloudgame.core.KeyMacro;
+import app.cloudgame.core.KeyMap;
+
+/**
+ * Plays {@link KeyMacro}s. Steps are timed on a dedicated thread so a busy main thread does not stretch
+ * the waits, and each key event is handed to the main thread as soon as it is due. A macro already
+ * playing ignores being triggered again.
+ */
+final class MacroPlayer {
+
+    private final KeyRemapper mRemapper;
+    private final HandlerThread mThread;
+    private final Handler mTimer;
+    private final Handler mMain = new Handler(Looper.getMainLooper());
+    // macro thread only
+    private final Set<Playback> mPlaying = new HashSet<>();
+
+    MacroPlayer(KeyRemapper remapper) {
+        mRemapper = remapper;
+        mThread = new HandlerThread("KeyMacro", Process.THREAD_PRIORITY_DISPLAY);
+        mThread.start();
+        mTimer = new Handler(mThread.getLooper());
+    }
+
+    void play(KeyMacro macro) {
+        mTimer.post(() -> {
+            for (Playback playback : mPlaying) {
+                if (playback.macro == macro) {
+                    return;
+                }
+            }
+            Playback playback = new Playback(macro);
+            mPlaying.add(playback);
+            playback.run();
+        });
+    }
+
+    /**
+     * Stops every macro, releasing the keys they hold.
+     */
+    void release() {
+        mTimer.post(() -> {
+            for (Playback playback : mPlaying) {
+                mTimer.removeCallbacks(playback);
+                playback.releaseAll();
+            }
+            mPlaying.clear();
+            mThread.quitSafely();
+        });
+    }
+
+    private final class Playback implements Runnable {
+        final KeyMacro macro;
+        private final long[] downTimes = new long[KeyMap.TABLE_SIZE];
+        private int step;
+        private int metaState;
+        private long due;
+
+        Playback(KeyMacro macro) {
+            this.macro = macro;
+            due = SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void run() {
+            while (step < macro.size()) {
+                int action = macro.action(step);
+                int value = macro.value(step);
+                step++;
+                if (action == KeyMacro.WAIT) {
+                    // timed from when the step was due, not when it ran, so waits do not drift
+                    due += value;
+                    if (due > SystemClock.uptimeMillis()) {
+                        mTimer.postAtTime(this, due);
+                        return;
+                    }
+                } else {
+                    send(action == KeyMacro.PRESS, value);
+                }
+            }
+            mPlaying.remove(this);
+        }
+
+        private void send(boolean down, int keyCode) {
+            long now = SystemClock.uptimeMillis();
+            if (down) {
+                downTimes[keyCode] = now;
+                metaState |= KeyRemapper.metaOf(keyCode);
+            } else {
+                metaState &= ~KeyRemapper.metaOf(keyCode);
+            }
+            final KeyEvent event = new KeyEvent(downTimes[keyCode], now,
+                    down ? KeyEvent.ACTION_DOWN : KeyEvent.ACTION_UP, keyCode, 0, KeyEvent.normalizeMetaState(metaState),
+                    KeyCharacterMap.VIRTUAL_KEYBOARD, mRemapper.scanCodeOf(keyCode), 0, InputDevice.SOURCE_KEYBOARD);
+            if (!down) {
+                downTimes[keyCode] = 0;
+            }
+            mMain.post(() -> mRemapper.dispatchMacroEvent(event));
+        }
+
+        void releaseAll() {
+            for (int code = 0; code < downTimes.length; code++) {
+                if (downTimes[code] != 0) {
+                    send(false, code);
+                }
+            }
+        }
+    }
+}
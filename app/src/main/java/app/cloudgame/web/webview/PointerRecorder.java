@@ -0,0 +1,112 @@
+package app.cloudgame.web.webview;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.cloudgame.core.PointerRecord;
+import app.cloudgame.core.PointerTraceWriter;
+
+/**
+ * Records captured pointer events, batched samples included, to
+ * {@code Android/data/<package>/files/pointer_traces/trace_<start>.cgpr} so real sessions can be replayed
+ * against the pointer pipeline in the JVM tests of {@code :core}.
+ * <p>
+ * Events are encoded on the main thread into memory and written out in chunks on a background thread.
+ */
+class PointerRecorder {
+
+    private static final String TAG = "PointerRecorder";
+    public static final String DIR_NAME = "pointer_traces";
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private static final ExecutorService sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    private final File mFile;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream(CHUNK_SIZE + 1024);
+    private final PointerTraceWriter mWriter;
+    private final PointerRecord mRecord = new PointerRecord();
+    private OutputStream mOut;
+    private boolean mFailed;
+
+    private PointerRecorder(File file) throws IOException {
+        mFile = file;
+        mWriter = new PointerTraceWriter(mBuffer, System.currentTimeMillis());
+    }
+
+    @Nullable
+    static PointerRecorder create(Context context) {
+        File dir = context.getExternalFilesDir(DIR_NAME);
+        if (dir == null) {
+            dir = new File(context.getFilesDir(), DIR_NAME);
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "can not create " + dir);
+            return null;
+        }
+        try {
+            return new PointerRecorder(new File(dir, "trace_" + System.currentTimeMillis() + ".cgpr"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    void record(MotionEvent event) {
+        mRecord.clear(event.getActionMasked(), event.getButtonState());
+        int history = event.getHistorySize();
+        for (int i = 0; i < history; i++) {
+            mRecord.addSample(event.getHistoricalEventTime(i), event.getHistoricalX(i), event.getHistoricalY(i));
+        }
+        mRecord.addSample(event.getEventTime(), event.getX(), event.getY());
+        try {
+            mWriter.write(mRecord);
+        } catch (IOException e) {
+            // in memory, can not happen
+            throw new IllegalStateException(e);
+        }
+        if (mBuffer.size() >= CHUNK_SIZE) {
+            submitChunk(false);
+        }
+    }
+
+    void close() {
+        submitChunk(true);
+    }
+
+    private void submitChunk(boolean last) {
+        final byte[] chunk = mBuffer.toByteArray();
+        mBuffer.reset();
+        sWriteExecutor.execute(() -> writeChunk(chunk, last));
+    }
+
+    // background thread only
+    private void writeChunk(byte[] chunk, boolean last) {
+        if (mFailed) {
+            return;
+        }
+        try {
+            if (mOut == null) {
+                mOut = new FileOutputStream(mFile);
+            }
+            mOut.write(chunk);
+            if (last) {
+                mOut.close();
+                Log.i(TAG, "pointer trace saved to " + mFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "can not write " + mFile, e);
+            mFailed = true;
+        }
+    }
+}
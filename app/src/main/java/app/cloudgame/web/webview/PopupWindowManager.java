@@ -0,0 +1,211 @@
+package app.cloudgame.web.webview;
+
+import android.annotation.SuppressLint;
+import android.app.Dialog;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.Message;
+import android.util.DisplayMetrics;
+import android.view.ViewGroup;
+import android.view.Window;
+import android.view.WindowManager;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import app.cloudgame.web.WebActivity;
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.Gauge;
+import app.cloudgame.web.perf.MetricsRegistry;
+
+/**
+ * Login and payment popups opened by the game page. A WebView handed to a WebViewTransport must never
+ * have navigated, so views can not be recycled after use; instead a small pool of configured, fresh
+ * views is kept ready and every closed popup is destroyed right away. One client pair is shared by all
+ * popups.
+ */
+class PopupWindowManager {
+
+    private static final int MAX_OPEN = 3;
+    private static final int POOL_SIZE = 1;
+
+    private final Context mContext;
+    private final ArrayDeque<WebView> mPool = new ArrayDeque<>();
+    // insertion ordered, the oldest popup is closed first when the cap is reached
+    private final LinkedHashMap<WebView, Dialog> mOpen = new LinkedHashMap<>();
+    private final WebViewClient mClient = new PopupWebViewClient();
+    private final WebChromeClient mChromeClient = new PopupChromeClient();
+    private boolean mRefillScheduled;
+    private boolean mReleased;
+
+    private final Counter mOpenCounter = MetricsRegistry.getRegistry().counter("popup.open");
+    private final Counter mPoolHits = MetricsRegistry.getRegistry().counter("popup.pool_hit");
+    private final Gauge mOpenGauge = MetricsRegistry.getRegistry().gauge("popup.open_count");
+
+    PopupWindowManager(Context context) {
+        mContext = context;
+    }
+
+    boolean open(WebView parent, Message resultMsg) {
+        if (mReleased || resultMsg == null || !(resultMsg.obj instanceof WebView.WebViewTransport)) {
+            return false;
+        }
+        while (mOpen.size() >= MAX_OPEN) {
+            close(mOpen.keySet().iterator().next());
+        }
+        WebView webView = obtain();
+        Dialog dialog = new Dialog(mContext);
+        dialog.requestWindowFeature(Window.FEATURE_NO_TITLE);
+        dialog.setContentView(webView);
+        dialog.setOnDismissListener(d -> destroy(webView));
+        mOpen.put(webView, dialog);
+        mOpenCounter.inc();
+        mOpenGauge.set(mOpen.size());
+
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams();
+        Window window = dialog.getWindow();
+        if (window != null) {
+            lp.copyFrom(window.getAttributes());
+            DisplayMetrics dm = parent.getContext().getResources().getDisplayMetrics();
+            lp.width = (int) (dm.widthPixels * 0.7);
+            lp.height = (int) (dm.heightPixels * 0.9);
+            lp.horizontalMargin = 0;
+            lp.verticalMargin = 0;
+            window.setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
+                    WindowManager.LayoutParams.FLAG_FULLSCREEN);
+            window.addFlags(WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN);
+        }
+        WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
+        transport.setWebView(webView);
+        resultMsg.sendToTarget();
+        dialog.show();
+        if (window != null) {
+            window.setAttributes(lp);
+        }
+        scheduleRefill();
+        return true;
+    }
+
+    void close(WebView webView) {
+        Dialog dialog = mOpen.get(webView);
+        if (dialog == null) {
+            return;
+        }
+        if (dialog.isShowing()) {
+            // destroys the view from the dismiss listener
+            dialog.dismiss();
+        } else {
+            destroy(webView);
+        }
+    }
+
+    /**
+     * Closes every popup and drops the pool, called when the owning GameView is destroyed.
+     */
+    void release() {
+        mReleased = true;
+        for (WebView webView : new ArrayList<>(mOpen.keySet())) {
+            close(webView);
+        }
+        for (Iterator<WebView> it = mPool.iterator(); it.hasNext(); ) {
+            it.next().destroy();
+            it.remove();
+        }
+    }
+
+    private WebView obtain() {
+        WebView webView = mPool.poll();
+        if (webView != null) {
+            mPoolHits.inc();
+            return webView;
+        }
+        return create();
+    }
+
+    @SuppressLint("SetJavaScriptEnabled")
+    private WebView create() {
+        WebView webView = new WebView(mContext);
+        WebSettings webSettings = webView.getSettings();
+        webSettings.setJavaScriptEnabled(true);
+        webSettings.setDomStorageEnabled(true);
+        webSettings.setDatabaseEnabled(true);
+        webView.setWebViewClient(mClient);
+        webView.setWebChromeClient(mChromeClient);
+        return webView;
+    }
+
+    private void destroy(WebView webView) {
+        if (mOpen.remove(webView) == null) {
+            return;
+        }
+        mOpenGauge.set(mOpen.size());
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        webView.stopLoading();
+        webView.destroy();
+    }
+
+    // a popup usually leads to another one (login -> authorize), so the next view is built while idle
+    private void scheduleRefill() {
+        if (mRefillScheduled || mPool.size() >= POOL_SIZE) {
+            return;
+        }
+        mRefillScheduled = true;
+        Looper.myQueue().addIdleHandler(() -> {
+            mRefillScheduled = false;
+            if (!mReleased && mPool.size() < POOL_SIZE) {
+                mPool.add(create());
+            }
+            return false;
+        });
+    }
+
+    private class PopupWebViewClient extends WebViewClient {
+        @Override
+        public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+            String scheme = request.getUrl().getScheme();
+            if (!request.getUrl().toString().contains("mihoyo.com")) {
+                Intent intent = new Intent(view.getContext(), WebActivity.class);
+                intent.putExtra(WebActivity.URL, request.getUrl().toString());
+                view.getContext().startActivity(intent);
+                close(view);
+                return true;
+            }
+            if ("https".equals(scheme) || "http".equals(scheme)) {
+                return false;
+            }
+            return super.shouldOverrideUrlLoading(view, request);
+        }
+
+        // popups share the renderer of the game page, returning false would take the :game process down
+        // before the game view gets to recover
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            if (mPool.remove(view)) {
+                // a dead spare must not be handed to the next transport, a live one is built while idle
+                view.destroy();
+                scheduleRefill();
+            } else {
+                close(view);
+            }
+            return true;
+        }
+    }
+
+    private class PopupChromeClient extends WebChromeClient {
+        @Override
+        public void onCloseWindow(WebView window) {
+            close(window);
+        }
+    }
+}
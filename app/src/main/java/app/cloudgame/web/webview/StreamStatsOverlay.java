@@ -0,0 +1,147 @@
+package app.cloudgame.web.webview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+import app.cloudgame.web.perf.StreamStatsBuffer;
+
+/**
+ * Small translucent panel that graphs the last minute of {@link StreamStatsBuffer} samples.
+ */
+public class StreamStatsOverlay extends View {
+
+    private static final int HISTORY = 60;
+    private static final int[] FIELDS = {
+            StreamStatsBuffer.RTT,
+            StreamStatsBuffer.JITTER,
+            StreamStatsBuffer.LOSS,
+            StreamStatsBuffer.FPS,
+            StreamStatsBuffer.BITRATE
+    };
+    private static final String[] LABELS = {"RTT", "Jitter", "Loss", "FPS", "Rate"};
+    private static final String[] UNITS = {"ms", "ms", "%", "", "kbps"};
+    private static final int[] COLORS = {
+            Color.rgb(0x4f, 0xc3, 0xf7),
+            Color.rgb(0xff, 0xb7, 0x4d),
+            Color.rgb(0xe5, 0x73, 0x73),
+            Color.rgb(0x81, 0xc7, 0x84),
+            Color.rgb(0xba, 0x68, 0xc8)
+    };
+
+    private final Paint backgroundPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path path = new Path();
+    private final float[] history = new float[HISTORY];
+    private final float rowHeight;
+    private final float padding;
+
+    private volatile StreamStatsBuffer buffer;
+    // one label per row, formatted when a sample arrives so drawing allocates nothing
+    private volatile String[] rowTexts;
+
+    public StreamStatsOverlay(Context context) {
+        this(context, null);
+    }
+
+    public StreamStatsOverlay(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        rowHeight = dp(22);
+        padding = dp(6);
+        backgroundPaint.setColor(Color.argb(0x99, 0, 0, 0));
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(dp(10));
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeWidth(dp(1));
+        setWillNotDraw(false);
+    }
+
+    public void setBuffer(StreamStatsBuffer buffer) {
+        this.buffer = buffer;
+        formatRows();
+        postInvalidate();
+    }
+
+    // called from the bridge thread whenever a sample arrives
+    public void onSample() {
+        formatRows();
+        postInvalidate();
+    }
+
+    private void formatRows() {
+        StreamStatsBuffer buffer = this.buffer;
+        if (buffer == null) {
+            return;
+        }
+        String[] texts = new String[FIELDS.length];
+        for (int row = 0; row < FIELDS.length; row++) {
+            float value = buffer.latest(FIELDS[row]);
+            texts[row] = value < 0
+                    ? LABELS[row] + " -"
+                    : String.format(Locale.ENGLISH, "%s %.0f%s", LABELS[row], value, UNITS[row]);
+        }
+        rowTexts = texts;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) dp(180);
+        int height = (int) (rowHeight * FIELDS.length + padding * 2);
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        StreamStatsBuffer buffer = this.buffer;
+        String[] texts = rowTexts;
+        if (buffer == null || texts == null || buffer.size() == 0) {
+            return;
+        }
+        canvas.drawRect(0, 0, getWidth(), getHeight(), backgroundPaint);
+        float labelWidth = getWidth() * 0.45f;
+        float graphLeft = labelWidth + padding;
+        float graphWidth = getWidth() - graphLeft - padding;
+        for (int row = 0; row < FIELDS.length; row++) {
+            float top = padding + row * rowHeight;
+            canvas.drawText(texts[row], padding, top + rowHeight * 0.7f, textPaint);
+
+            int count = buffer.copyRecent(FIELDS[row], history);
+            if (count < 2) {
+                continue;
+            }
+            float max = 1;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, history[i]);
+            }
+            float bottom = top + rowHeight - dp(3);
+            float height = rowHeight - dp(6);
+            float step = graphWidth / (HISTORY - 1);
+            path.rewind();
+            for (int i = 0; i < count; i++) {
+                float x = graphLeft + (HISTORY - count + i) * step;
+                float y = bottom - Math.max(0, history[i]) / max * height;
+                if (i == 0) {
+                    path.moveTo(x, y);
+                } else {
+                    path.lineTo(x, y);
+                }
+            }
+            linePaint.setColor(COLORS[row]);
+            canvas.drawPath(path, linePaint);
+        }
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,129 @@
+package app.cloudgame.web.webview;
+
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.Nullable;
+
+import app.cloudgame.core.TrackpadGestures;
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.MetricsRegistry;
+
+/**
+ * Turns the touchscreen into a trackpad while the page holds the pointer, for devices without a mouse.
+ * Touches are read by {@link TrackpadGestures}; drags, clicks and scrolls go into the container's
+ * pointer pipeline like captured mouse input. A gesture that started as
+ * trackpad input stays one until its last finger is up, even if capture is lost in between, so the
+ * page never sees the tail of a touch sequence.
+ */
+final class TouchTrackpad implements TrackpadGestures.Output {
+
+    private final WebContainer mContainer;
+    @Nullable
+    private final TrackpadOverlay mOverlay;
+    private final TrackpadGestures mGestures;
+    private boolean mConsuming;
+    // a sample of the current move reached the pipeline
+    private boolean mMoved;
+
+    private final Counter mTouches = MetricsRegistry.getRegistry().counter("input.trackpad.touch");
+
+    TouchTrackpad(WebContainer container, @Nullable TrackpadOverlay overlay) {
+        mContainer = container;
+        mOverlay = overlay;
+        mGestures = new TrackpadGestures(this, overlay,
+                ViewConfiguration.get(container.getContext()).getScaledTouchSlop());
+    }
+
+    /**
+     * @return true when the event belongs to a trackpad gesture and has been consumed
+     */
+    boolean onTouchEvent(MotionEvent event, boolean captured) {
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mConsuming = captured;
+        }
+        if (!mConsuming) {
+            return false;
+        }
+        mTouches.inc();
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                int index = event.getActionIndex();
+                mGestures.down(event.getPointerId(index), event.getX(index), event.getY(index), event.getEventTime());
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                int pointers = event.getPointerCount();
+                int history = event.getHistorySize();
+                for (int h = 0; h < history; h++) {
+                    for (int p = 0; p < pointers; p++) {
+                        mGestures.move(event.getPointerId(p), event.getHistoricalX(p, h), event.getHistoricalY(p, h));
+                    }
+                }
+                for (int p = 0; p < pointers; p++) {
+                    mGestures.move(event.getPointerId(p), event.getX(p), event.getY(p));
+                }
+                mGestures.endMove();
+                break;
+            }
+            case MotionEvent.ACTION_POINTER_UP:
+                mGestures.up(event.getPointerId(event.getActionIndex()), event.getEventTime());
+                break;
+            case MotionEvent.ACTION_UP:
+                mGestures.up(event.getPointerId(event.getActionIndex()), event.getEventTime());
+                mConsuming = false;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                mGestures.cancel();
+                mConsuming = false;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Shows the button overlay while the trackpad is in use.
+     */
+    void setEngaged(boolean engaged) {
+        if (!engaged) {
+            // releases held overlay buttons, the fingers still down are ignored until lifted
+            mGestures.cancel();
+        }
+        if (mOverlay != null) {
+            mOverlay.setVisibility(engaged ? TrackpadOverlay.VISIBLE : TrackpadOverlay.GONE);
+        }
+    }
+
+    @Override
+    public void onMove(float dx, float dy) {
+        if (mContainer.hasPointerCapture()) {
+            mContainer.addMovementSample(dx, dy);
+            mMoved = true;
+        }
+    }
+
+    @Override
+    public void onMoveEnd() {
+        if (mMoved) {
+            mMoved = false;
+            mContainer.endMovement();
+        }
+    }
+
+    @Override
+    public void onButton(int button, boolean down) {
+        if (mOverlay != null) {
+            mOverlay.setPressed(button, down);
+        }
+        mContainer.pressMouseButton(button, down);
+    }
+
+    @Override
+    public void onWheel(float dx, float dy) {
+        if (mContainer.hasPointerCapture()) {
+            mContainer.scrollWheel(dx, dy);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package app.cloudgame.web.webview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.TypedValue;
+import android.view.View;
+
+import app.cloudgame.core.TrackpadGestures;
+
+/**
+ * Primary and secondary mouse buttons drawn in the bottom corners while the touchscreen works as a
+ * trackpad. The view only draws; touches are read by {@link TouchTrackpad}, which asks it what lies
+ * under a finger.
+ */
+public class TrackpadOverlay extends View implements TrackpadGestures.ButtonArea {
+
+    private static final int[] BUTTONS = {0, 2};
+    private static final String[] LABELS = {"L", "R"};
+
+    private final Paint buttonPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint pressedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float radius;
+    private final float margin;
+    private final boolean[] pressed = new boolean[BUTTONS.length];
+
+    public TrackpadOverlay(Context context) {
+        super(context);
+        radius = dp(44);
+        margin = dp(24);
+        buttonPaint.setColor(Color.argb(0x55, 0xff, 0xff, 0xff));
+        pressedPaint.setColor(Color.argb(0xaa, 0xff, 0xff, 0xff));
+        textPaint.setColor(Color.argb(0xcc, 0, 0, 0));
+        textPaint.setTextSize(dp(20));
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        setWillNotDraw(false);
+    }
+
+    @Override
+    public int buttonAt(float x, float y) {
+        if (getVisibility() != VISIBLE) {
+            return -1;
+        }
+        for (int i = 0; i < BUTTONS.length; i++) {
+            float dx = x - centerX(i);
+            float dy = y - centerY();
+            if (dx * dx + dy * dy <= radius * radius) {
+                return BUTTONS[i];
+            }
+        }
+        return -1;
+    }
+
+    void setPressed(int button, boolean down) {
+        for (int i = 0; i < BUTTONS.length; i++) {
+            if (BUTTONS[i] == button && pressed[i] != down) {
+                pressed[i] = down;
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        for (int i = 0; i < BUTTONS.length; i++) {
+            float x = centerX(i);
+            float y = centerY();
+            canvas.drawCircle(x, y, radius, pressed[i] ? pressedPaint : buttonPaint);
+            canvas.drawText(LABELS[i], x, y - (textPaint.ascent() + textPaint.descent()) / 2, textPaint);
+        }
+    }
+
+    private float centerX(int index) {
+        return index == 0 ? margin + radius : getWidth() - margin - radius;
+    }
+
+    private float centerY() {
+        return getHeight() - margin - radius;
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+}
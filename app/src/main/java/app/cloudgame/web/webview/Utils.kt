@@ -2,6 +2,7 @@ package app.cloudgame.web.webview
 
 import android.annotation.SuppressLint
 import android.content.Context
+import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Build
 import android.os.VibrationEffect
@@ -11,6 +12,7 @@ import android.util.Log
 import android.webkit.CookieManager
 import android.webkit.WebStorage
 import android.webkit.WebView
+import app.cloudgame.web.Configuration
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import java.io.File
@@ -235,6 +237,43 @@ fun clearWebViewUserDataAndCache(context: Context) {
 
 }
 
+const val GAME_PROCESS_SUFFIX = "game"
+
+fun isGameProcess(context: Context): Boolean {
+    val name = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+        android.app.Application.getProcessName()
+    } else {
+        try {
+            File("/proc/self/cmdline").readText().trim('\u0000')
+        } catch (e: IOException) {
+            ""
+        }
+    }
+    return name == "${context.packageName}:$GAME_PROCESS_SUFFIX"
+}
+
+const val ACTION_CLEAR_WEB_DATA = "app.cloudgame.web.action.CLEAR_WEB_DATA"
+
+/**
+ * WebView data lives in the :game process, so the launcher only marks it for clearing. A running game
+ * is asked to finish and clears the data once its WebView is destroyed; otherwise the next game clears
+ * it before creating one.
+ */
+fun scheduleClearWebViewData(context: Context) {
+    Configuration.getConfiguration().setBooleanValue(Configuration.PENDING_CLEAR_WEB_DATA, true)
+    context.sendBroadcast(Intent(ACTION_CLEAR_WEB_DATA).setPackage(context.packageName))
+}
+
+/**
+ * Clears the data marked by [scheduleClearWebViewData], in :game while no WebView is alive.
+ */
+fun clearPendingWebViewData(context: Context) {
+    if (Configuration.getConfiguration().readBooleanValue(Configuration.PENDING_CLEAR_WEB_DATA)) {
+        clearWebViewUserDataAndCache(context)
+        Configuration.getConfiguration().setBooleanValue(Configuration.PENDING_CLEAR_WEB_DATA, false)
+    }
+}
+
 fun deleteDirectory(dir: File): Boolean {
     if (dir.isDirectory) {
         val children = dir.listFiles()
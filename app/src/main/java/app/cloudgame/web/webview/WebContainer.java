@@ -1,32 +1,101 @@
 package app.cloudgame.web.webview;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.Gravity;
 import android.view.InputDevice;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
-import android.webkit.ValueCallback;
-import android.widget.LinearLayout;
+import android.view.ViewConfiguration;
+import android.widget.FrameLayout;
 
 import androidx.annotation.Nullable;
 
-import java.util.Locale;
-
+import app.cloudgame.core.KeyMap;
+import app.cloudgame.core.PointerLockStateMachine;
+import app.cloudgame.core.PointerPipeline;
+import app.cloudgame.core.ScriptSink;
 import app.cloudgame.web.Configuration;
 import app.cloudgame.web.pages.SettingsPageKt;
+import app.cloudgame.web.perf.Counter;
+import app.cloudgame.web.perf.Histogram;
+import app.cloudgame.web.perf.MetricsRegistry;
+import app.cloudgame.web.perf.PerfTrace;
+
+public class WebContainer extends FrameLayout {
 
-public class WebContainer extends LinearLayout {
+    private static final String TRACE_MOVEMENT = "input.movement";
 
     private float currentMouseX = 0;
     private float currentMouseY = 0;
-    private float mouseSpeed = 1.f;
-    private boolean enableUserMouseSpeed;
+    // pixels per wheel unit, as the WebView scrolls for a real wheel
+    private float horizontalScrollFactor;
+    private float verticalScrollFactor;
+    private final PointerPipeline pointerPipeline = new PointerPipeline((script, callback) -> sendMovement(script), new PointerPipeline.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            WebContainer.this.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            removeCallbacks(task);
+        }
+    });
+    @Nullable
+    private PointerRecorder pointerRecorder;
+    @Nullable
+    private KeyRemapper keyRemapper;
+    @Nullable
+    private GamepadInput gamepadInput;
+    @Nullable
+    private TouchTrackpad touchTrackpad;
+
+    private final Counter moveCounter = MetricsRegistry.getRegistry().counter("input.move");
+    private final Counter buttonCounter = MetricsRegistry.getRegistry().counter("input.button");
+    private final Counter wheelCounter = MetricsRegistry.getRegistry().counter("input.wheel");
+    private final Histogram moveLatency = MetricsRegistry.getRegistry().histogram("input.move.latency", "ms");
+    private final Histogram evalCost = MetricsRegistry.getRegistry().histogram("input.move.eval", "us");
+    private final Counter scriptCounter = MetricsRegistry.getRegistry().counter("input.move.script");
 
     public void setWebView(GameView webView) {
         this.webView = webView;
     }
 
     private GameView webView;
+    private StreamStatsOverlay statsOverlay;
+    private final PointerLockStateMachine pointerLock = new PointerLockStateMachine(new PointerLockStateMachine.Host() {
+        @Override
+        public boolean hasWindowFocus() {
+            return WebContainer.this.hasWindowFocus();
+        }
+
+        @Override
+        public void requestCapture() {
+            // after the pending layout pass, capture is only granted to a laid out, focused window
+            post(() -> {
+                if (pointerLock.getState() == PointerLockStateMachine.State.ACQUIRING && !hasPointerCapture()) {
+                    requestPointerCapture();
+                }
+            });
+        }
+
+        @Override
+        public void releaseCapture() {
+            releasePointerCapture();
+        }
+
+        @Override
+        public void onLockChanged(boolean locked, String elementId) {
+            if (webView != null) {
+                webView.getPageChannel().pointerLockChange(locked, elementId, null);
+            }
+        }
+    });
+    private final Histogram lockLatency = MetricsRegistry.getRegistry().histogram("input.lock.acquire", "ms");
+    private final Counter lockDeduplicated = MetricsRegistry.getRegistry().counter("input.lock.dedup");
+    private final Counter lockRecaptured = MetricsRegistry.getRegistry().counter("input.lock.recapture");
 
     public WebContainer(Context context) {
         super(context);
@@ -44,8 +113,91 @@ public class WebContainer extends LinearLayout {
     }
 
     private void initParams() {
-        mouseSpeed = SettingsPageKt.getMouseSpeed(Configuration.getConfiguration().getMouseSpeedLevel());
-        enableUserMouseSpeed = mouseSpeed != 1.f;
+        pointerPipeline.setSpeed(SettingsPageKt.getMouseSpeed(Configuration.getConfiguration().getMouseSpeedLevel()));
+        ViewConfiguration viewConfiguration = ViewConfiguration.get(getContext());
+        horizontalScrollFactor = viewConfiguration.getScaledHorizontalScrollFactor();
+        verticalScrollFactor = viewConfiguration.getScaledVerticalScrollFactor();
+    }
+
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.STREAM_STATS)) {
+            // added after the inflated GameView so it draws on top
+            statsOverlay = new StreamStatsOverlay(getContext());
+            addView(statsOverlay, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END));
+        }
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.RECORD_POINTER)) {
+            pointerRecorder = PointerRecorder.create(getContext());
+        }
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.GAMEPAD_MOUSE)) {
+            gamepadInput = new GamepadInput(this);
+        }
+        if (Configuration.getConfiguration().readBooleanValue(Configuration.TOUCH_TRACKPAD)) {
+            TrackpadOverlay overlay = null;
+            if (Configuration.getConfiguration().readBooleanValue(Configuration.TRACKPAD_BUTTONS)) {
+                overlay = new TrackpadOverlay(getContext());
+                overlay.setVisibility(GONE);
+                addView(overlay, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            }
+            touchTrackpad = new TouchTrackpad(this, overlay);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (pointerRecorder != null) {
+            pointerRecorder.close();
+            pointerRecorder = null;
+        }
+        setKeyMap(null);
+        if (gamepadInput != null) {
+            gamepadInput.reset();
+        }
+    }
+
+    /**
+     * Remaps keys and plays macros while the page holds the pointer; null turns it off.
+     */
+    public void setKeyMap(@Nullable KeyMap keyMap) {
+        if (keyRemapper != null) {
+            keyRemapper.release();
+            keyRemapper = null;
+        }
+        if (keyMap != null && !keyMap.isEmpty()) {
+            keyRemapper = new KeyRemapper(this, keyMap);
+        }
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (keyRemapper != null && keyRemapper.dispatch(event, hasPointerCapture())) {
+            return true;
+        }
+        // buttons the keymap binds were taken above
+        if (gamepadInput != null && gamepadInput.onKeyEvent(event, hasPointerCapture())) {
+            return true;
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    // remapped and macro keys, past the remapping
+    boolean dispatchMappedKeyEvent(KeyEvent event) {
+        return super.dispatchKeyEvent(event);
+    }
+
+    @Nullable
+    public StreamStatsOverlay getStatsOverlay() {
+        return statsOverlay;
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (touchTrackpad != null && touchTrackpad.onTouchEvent(event, hasPointerCapture())) {
+            return true;
+        }
+        return super.dispatchTouchEvent(event);
     }
 
     @Override
@@ -54,25 +206,39 @@ public class WebContainer extends LinearLayout {
             currentMouseX = event.getX();
             currentMouseY = event.getY();
         }
+        if (gamepadInput != null && hasPointerCapture() && gamepadInput.onMotionEvent(event)) {
+            return true;
+        }
         return super.dispatchGenericMotionEvent(event);
     }
 
     @Override
     public boolean dispatchCapturedPointerEvent(MotionEvent event) {
         if (hasPointerCapture()) {
+            if (pointerRecorder != null) {
+                pointerRecorder.record(event);
+            }
             if (event.getActionMasked() == MotionEvent.ACTION_MOVE || event.getActionMasked() == MotionEvent.ACTION_HOVER_MOVE) {
-                if (enableUserMouseSpeed) {
-                    float x = event.getX() * mouseSpeed;
-                    float y = event.getY() * mouseSpeed;
-                    String script = String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%f,%f)", x, y);
-                    evaluateJavascript(script, null);
-                } else {
-                    int x = (int) event.getX();
-                    int y = (int) event.getY();
-                    String script = String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%d,%d)", x, y);
-                    evaluateJavascript(script, null);
+                moveCounter.inc();
+                moveLatency.record(SystemClock.uptimeMillis() - event.getEventTime());
+                // captured deltas are relative, a batched event carries the ones before its own as history
+                int history = event.getHistorySize();
+                for (int i = 0; i < history; i++) {
+                    pointerPipeline.addSample(event.getHistoricalX(i), event.getHistoricalY(i));
                 }
+                pointerPipeline.addSample(event.getX(), event.getY());
+                pointerPipeline.endMove();
+            } else if (event.getActionMasked() == MotionEvent.ACTION_SCROLL) {
+                // the platform scrolls up and left for positive values, the DOM down and right
+                scrollWheel(event.getAxisValue(MotionEvent.AXIS_HSCROLL) * horizontalScrollFactor,
+                        -event.getAxisValue(MotionEvent.AXIS_VSCROLL) * verticalScrollFactor);
             } else {
+                if (isButtonAction(event.getActionMasked())) {
+                    buttonCounter.inc();
+                    // buttons stay native for click, contextmenu and user activation; movement still
+                    // pending goes first so the press lands where the page thinks the pointer is
+                    pointerPipeline.flush();
+                }
                 event.setSource(InputDevice.SOURCE_MOUSE);
                 event.setLocation(currentMouseX, currentMouseY);
                 return super.dispatchGenericPointerEvent(event);
@@ -82,6 +248,64 @@ public class WebContainer extends LinearLayout {
         return super.dispatchCapturedPointerEvent(event);
     }
 
+    private static boolean isButtonAction(int action) {
+        return action == MotionEvent.ACTION_BUTTON_PRESS || action == MotionEvent.ACTION_BUTTON_RELEASE
+                || action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_UP;
+    }
+
+    // relative movement from other devices, batched and scaled like the mouse's
+    void moveBy(float dx, float dy) {
+        addMovementSample(dx, dy);
+        endMovement();
+    }
+
+    void addMovementSample(float dx, float dy) {
+        pointerPipeline.addSample(dx, dy);
+    }
+
+    void endMovement() {
+        pointerPipeline.endMove();
+    }
+
+    // pixels, positive scrolls right and down
+    void scrollWheel(float dx, float dy) {
+        wheelCounter.inc();
+        pointerPipeline.wheel(dx, dy);
+    }
+
+    /**
+     * Presses a button of an input without native mouse events, the page completes it with a click.
+     *
+     * @param button DOM button number
+     */
+    void pressMouseButton(int button, boolean down) {
+        buttonCounter.inc();
+        pointerPipeline.button(button, down);
+    }
+
+    private void sendMovement(String script) {
+        long start = System.nanoTime();
+        boolean traced = PerfTrace.begin(PerfTrace.LEVEL_INFO, "WebContainer.movement");
+        // spans from the event reaching us until the page has run the movement callback
+        int cookie = PerfTrace.beginAsync(PerfTrace.LEVEL_INFO, TRACE_MOVEMENT);
+        ScriptSink.ResultCallback cb = cookie == 0 ? null : v -> PerfTrace.endAsync(TRACE_MOVEMENT, cookie);
+        scriptCounter.inc();
+        evaluateJavascript(script, cb);
+        PerfTrace.end(traced);
+        evalCost.record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Coalesces captured movement into one page callback per {@code intervalMs}; 0 restores per event delivery.
+     */
+    public void setMovementFlushInterval(int intervalMs) {
+        pointerPipeline.setFlushInterval(intervalMs);
+    }
+
+    public int getMovementFlushInterval() {
+        return pointerPipeline.getFlushInterval();
+    }
+
     @Override
     protected boolean dispatchGenericPointerEvent(MotionEvent event) {
         return super.dispatchGenericPointerEvent(event);
@@ -90,27 +314,66 @@ public class WebContainer extends LinearLayout {
     @Override
     public void onPointerCaptureChange(boolean hasCapture) {
         super.onPointerCaptureChange(hasCapture);
-        if (webView == null) {
-            return;
+        if (touchTrackpad != null) {
+            touchTrackpad.setEngaged(hasCapture);
         }
-        JSBridge jsBridge = webView.getJsBridge();
-        if (jsBridge == null) {
-            return;
+        if (!hasCapture) {
+            pointerPipeline.reset();
+            if (gamepadInput != null) {
+                gamepadInput.reset();
+            }
+        }
+        // tells the page, or gives back capture the page no longer wants
+        long latency = pointerLock.onCaptureChanged(hasCapture, SystemClock.uptimeMillis());
+        if (latency >= 0) {
+            lockLatency.record(latency);
         }
-        String script = String.format("window.POINTER_LOCK_CHANGE_CB(%s, %s)", hasCapture? "true": "false", jsBridge.getGson().toJson(jsBridge.getLastLockEleId()));
-        evaluateJavascript(script, null);
     }
 
-    public void notifyLockStateWithCallback(boolean hasCapture, ValueCallback<String> cb) {
-        JSBridge jsBridge = webView.getJsBridge();
-        String script = String.format("window.POINTER_LOCK_CHANGE_CB(%s, %s)", hasCapture? "true": "false", jsBridge.getGson().toJson(jsBridge.getLastLockEleId()));
-        evaluateJavascript(script, cb);
+    /**
+     * The page asked for a pointer lock, or the player clicked into the game.
+     *
+     * @param elementId element to lock, null keeps the last one
+     */
+    public void requestPointerLock(@Nullable String elementId) {
+        if (!pointerLock.requestLock(elementId, SystemClock.uptimeMillis())) {
+            lockDeduplicated.inc();
+        }
+    }
+
+    public void exitPointerLock() {
+        pointerLock.exitLock();
+    }
+
+    public String getPointerLockElementId() {
+        return pointerLock.getElementId();
+    }
+
+    /**
+     * Requests capture again if the page still holds a pointer lock but the window lost it, e.g. after
+     * a mouse was re-plugged or the window was resized in place.
+     */
+    public void restorePointerCapture() {
+        if (pointerLock.restore(SystemClock.uptimeMillis())) {
+            lockRecaptured.inc();
+        }
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (pointerLock.onWindowFocusChanged(hasWindowFocus, SystemClock.uptimeMillis())) {
+            lockRecaptured.inc();
+        }
+    }
+
+    public void notifyLockStateWithCallback(boolean hasCapture, ScriptSink.ResultCallback cb) {
+        webView.getPageChannel().pointerLockChange(hasCapture, pointerLock.getElementId(), cb);
     }
 
-    private void evaluateJavascript(String source, ValueCallback<String> cb) {
+    private void evaluateJavascript(String source, ScriptSink.ResultCallback cb) {
         if (webView != null) {
-            Log.d("eval", source);
-            webView.evaluateJavascript(source, cb);
+            webView.getPageChannel().evaluate(source, cb);
         }
     }
 }
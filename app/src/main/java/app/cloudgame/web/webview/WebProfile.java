@@ -0,0 +1,105 @@
+package app.cloudgame.web.webview;
+
+import android.text.TextUtils;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.cloudgame.web.Configuration;
+
+/**
+ * A named set of WebView settings applied by {@link GameView#applyProfile(WebProfile)} before the page
+ * loads. Built-in presets ship with the app; extra profiles can be stored as a JSON list under
+ * {@link Configuration#WEB_PROFILES}.
+ */
+public class WebProfile {
+
+    public static final String DEFAULT = "default";
+    public static final String LOW_LATENCY = "low_latency";
+    public static final String BATTERY_SAVER = "battery_saver";
+
+    public String name;
+    public int cacheMode = WebSettings.LOAD_DEFAULT;
+    public int rendererPriority = WebView.RENDERER_PRIORITY_IMPORTANT;
+    public boolean rendererWaivedWhenNotVisible = false;
+    public boolean offscreenPreRaster = false;
+    public boolean loadsImagesAutomatically = true;
+    public boolean safeBrowsing = true;
+    public int mixedContentMode = WebSettings.MIXED_CONTENT_NEVER_ALLOW;
+
+    public WebProfile() {
+    }
+
+    private WebProfile(String name) {
+        this.name = name;
+    }
+
+    private static final Map<String, WebProfile> BUILT_IN = new LinkedHashMap<>();
+
+    static {
+        // matches what GameView used for every site before profiles existed
+        BUILT_IN.put(DEFAULT, new WebProfile(DEFAULT));
+
+        // only rasterizes ahead, Safe Browsing and the mixed content policy stay as in the default
+        WebProfile lowLatency = new WebProfile(LOW_LATENCY);
+        lowLatency.offscreenPreRaster = true;
+        BUILT_IN.put(LOW_LATENCY, lowLatency);
+
+        WebProfile batterySaver = new WebProfile(BATTERY_SAVER);
+        batterySaver.rendererPriority = WebView.RENDERER_PRIORITY_BOUND;
+        batterySaver.rendererWaivedWhenNotVisible = true;
+        BUILT_IN.put(BATTERY_SAVER, batterySaver);
+    }
+
+    public static WebProfile getDefault() {
+        return BUILT_IN.get(DEFAULT);
+    }
+
+    public static WebProfile getProfile(String name) {
+        if (TextUtils.isEmpty(name)) {
+            return getDefault();
+        }
+        WebProfile profile = BUILT_IN.get(name);
+        if (profile != null) {
+            return profile;
+        }
+        for (WebProfile custom : loadCustomProfiles()) {
+            if (name.equals(custom.name)) {
+                return custom;
+            }
+        }
+        return getDefault();
+    }
+
+    public static List<String> getProfileNames() {
+        List<String> names = new ArrayList<>(BUILT_IN.keySet());
+        for (WebProfile custom : loadCustomProfiles()) {
+            if (!TextUtils.isEmpty(custom.name) && !names.contains(custom.name)) {
+                names.add(custom.name);
+            }
+        }
+        return names;
+    }
+
+    private static List<WebProfile> loadCustomProfiles() {
+        String json = Configuration.getConfiguration().getStringValue(Configuration.WEB_PROFILES, "");
+        if (TextUtils.isEmpty(json)) {
+            return new ArrayList<>();
+        }
+        try {
+            List<WebProfile> profiles = new Gson().fromJson(json, new TypeToken<List<WebProfile>>(){}.getType());
+            return profiles == null ? new ArrayList<>() : profiles;
+        } catch (JsonSyntaxException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package app.cloudgame.web.webview;
+
+import android.webkit.WebView;
+
+import app.cloudgame.core.ScriptSink;
+import app.cloudgame.web.perf.PerfTrace;
+
+/**
+ * Runs scripts in a WebView's main frame.
+ */
+final class WebViewScriptSink implements ScriptSink {
+
+    private final WebView mWebView;
+
+    WebViewScriptSink(WebView webView) {
+        mWebView = webView;
+    }
+
+    @Override
+    public void evaluate(String script, ResultCallback callback) {
+        PerfTrace.verbose("eval", script);
+        mWebView.evaluateJavascript(script, callback == null ? null : callback::onResult);
+    }
+}
@@ -0,0 +1,93 @@
+package app.cloudgame.web.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long v = 0; v < 16; v++) {
+            int index = Histogram.indexOf(v);
+            assertEquals(v, Histogram.lowerBoundOf(index));
+            assertEquals(v, Histogram.upperBoundOf(index));
+        }
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        // 16..17 is the first sub-bucket of the 16..31 range, eight buckets of two
+        assertEquals(Histogram.indexOf(16), Histogram.indexOf(17));
+        assertNotEquals(Histogram.indexOf(17), Histogram.indexOf(18));
+        assertEquals(16, Histogram.lowerBoundOf(Histogram.indexOf(17)));
+        assertEquals(17, Histogram.upperBoundOf(Histogram.indexOf(16)));
+        assertEquals(Histogram.indexOf(31) + 1, Histogram.indexOf(32));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.indexOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(Histogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void everyValueFallsInsideItsBucket() {
+        for (int shift = 0; shift < 63; shift++) {
+            for (long v : new long[]{(1L << shift) - 1, 1L << shift, (1L << shift) + 1, (1L << shift) * 3 / 2}) {
+                if (v < 0) {
+                    continue;
+                }
+                int index = Histogram.indexOf(v);
+                assertTrue(v + " >= lower", v >= Histogram.lowerBoundOf(index));
+                assertTrue(v + " <= upper", v <= Histogram.upperBoundOf(index));
+                // within one eighth of the value
+                assertTrue(v + " error", Histogram.upperBoundOf(index) - Histogram.lowerBoundOf(index) <= Math.max(0, v / 8));
+            }
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram("test", "ms");
+        for (int v = 1; v <= 100; v++) {
+            histogram.record(v);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(10));
+        long p50 = histogram.getPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 50 && p50 <= 50 + 50 / 8);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 99 && p99 <= 100);
+        // capped by the largest value seen, not the bucket's upper bound
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void weightedAndNegativeValues() {
+        Histogram histogram = new Histogram("test", "ms");
+        histogram.record(-5);
+        histogram.record(7, 3);
+        histogram.record(9, 0);
+        assertEquals(4, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(21, histogram.getSum());
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(1, histogram.getBucket(0));
+        assertEquals(3, histogram.getBucket(7));
+    }
+
+    @Test
+    public void emptyAndReset() {
+        Histogram histogram = new Histogram("test", "ms");
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getBucket(Histogram.indexOf(1000)));
+    }
+}
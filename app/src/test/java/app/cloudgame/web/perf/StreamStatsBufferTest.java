@@ -0,0 +1,38 @@
+package app.cloudgame.web.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamStatsBufferTest {
+
+    @Test
+    public void fullSample() {
+        StreamStatsBuffer buffer = new StreamStatsBuffer(MetricsRegistry.getRegistry());
+        assertTrue(buffer.addSample("1000,25,3.5,0.2,60,12000"));
+        assertEquals(1, buffer.size());
+        assertEquals(25, buffer.latest(StreamStatsBuffer.RTT), 0);
+        assertEquals(12000, buffer.latest(StreamStatsBuffer.BITRATE), 0);
+    }
+
+    @Test
+    public void trailingEmptyFieldsAreMissingValues() {
+        // first sample after a start or reconnect, there is no previous inbound to diff against
+        StreamStatsBuffer buffer = new StreamStatsBuffer(MetricsRegistry.getRegistry());
+        assertTrue(buffer.addSample("1000,25,3.5,,,"));
+        assertEquals(1, buffer.size());
+        assertEquals(25, buffer.latest(StreamStatsBuffer.RTT), 0);
+        assertEquals(-1, buffer.latest(StreamStatsBuffer.LOSS), 0);
+        assertEquals(-1, buffer.latest(StreamStatsBuffer.FPS), 0);
+        assertEquals(-1, buffer.latest(StreamStatsBuffer.BITRATE), 0);
+    }
+
+    @Test
+    public void malformedSamplesAreRejected() {
+        StreamStatsBuffer buffer = new StreamStatsBuffer(MetricsRegistry.getRegistry());
+        assertFalse(buffer.addSample(null));
+        assertFalse(buffer.addSample("1000,25,3.5"));
+        assertFalse(buffer.addSample("1000,x,3.5,0,60,12000"));
+        assertEquals(0, buffer.size());
+    }
+}
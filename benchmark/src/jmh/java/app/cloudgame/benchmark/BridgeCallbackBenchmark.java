@@ -0,0 +1,57 @@
+package app.cloudgame.benchmark;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.BridgeScript;
+
+/**
+ * Answer to a page to native bridge call. {@code gson} is the JSBridge.evalCallback encoding before
+ * BridgeScript; both produce identical strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BridgeCallbackBenchmark {
+
+    @Param({"ok", "json"})
+    public String result;
+
+    private final Gson gson = new Gson();
+    private String callbackId;
+    private String payload;
+
+    @Setup
+    public void setup() {
+        callbackId = "1024";
+        if ("json".equals(result)) {
+            StringBuilder sb = new StringBuilder("{\"items\":[");
+            for (int i = 0; i < 16; i++) {
+                sb.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item <").append(i).append(">\"}");
+            }
+            payload = sb.append("]}").toString();
+        } else {
+            payload = result;
+        }
+    }
+
+    @Benchmark
+    public String gson() {
+        return String.format("window.CG_EVAL_CALLBACK(%s, %s)", gson.toJson(callbackId), gson.toJson(payload));
+    }
+
+    @Benchmark
+    public String bridgeScript() {
+        return BridgeScript.callback(callbackId, payload);
+    }
+}
@@ -0,0 +1,67 @@
+package app.cloudgame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.EntryCodec;
+import app.cloudgame.core.EntryType;
+import app.cloudgame.core.UiEntry;
+
+/**
+ * The launcher collection is decoded on every launcher start and encoded on every edit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollectionCodecBenchmark {
+
+    @Param({"2", "20", "100"})
+    public int entries;
+
+    private List<UiEntry> list;
+    private String json;
+
+    @Setup
+    public void setup() {
+        list = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            list.add(new UiEntry(
+                    "F8316DB6-C4FA-8E4B-DB8C-" + String.format("%012d", i),
+                    "https://example.com/cloud/?autobegin=1&utm_source=default#/" + i,
+                    "https://example.com/favicon.ico",
+                    "Entry " + i,
+                    Collections.singletonList("force_disable_guide"),
+                    EntryType.Web,
+                    "low_latency",
+                    i % 2 == 0 ? 60 : 0,
+                    i % 4 == 0 ? "CAPS_LOCK = ESCAPE\nF1 = +SHIFT_LEFT W 500ms -SHIFT_LEFT" : null));
+        }
+        json = EntryCodec.INSTANCE.encode(list);
+    }
+
+    @Benchmark
+    public String encode() {
+        return EntryCodec.INSTANCE.encode(list);
+    }
+
+    @Benchmark
+    public List<UiEntry> decode() {
+        return EntryCodec.INSTANCE.decode(json);
+    }
+
+    @Benchmark
+    public List<UiEntry> roundTrip() {
+        return EntryCodec.INSTANCE.decode(EntryCodec.INSTANCE.encode(list));
+    }
+}
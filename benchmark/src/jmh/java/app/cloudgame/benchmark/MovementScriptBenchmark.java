@@ -0,0 +1,70 @@
+package app.cloudgame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.MovementScript;
+
+/**
+ * One script per captured mouse movement, so this runs at the mouse polling rate (up to 1000 Hz).
+ * The {@code format*} methods are the String.format calls WebContainer used before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MovementScriptBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    private final int[] ints = new int[SAMPLES * 2];
+    private final float[] floats = new float[SAMPLES * 2];
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < ints.length; i++) {
+            // typical relative deltas of a captured mouse
+            ints[i] = random.nextInt(41) - 20;
+            floats[i] = ints[i] * 1.35f;
+        }
+    }
+
+    private int next() {
+        index = (index + 2) & (SAMPLES * 2 - 1);
+        return index;
+    }
+
+    @Benchmark
+    public String formatInt() {
+        int i = next();
+        return String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%d,%d)", ints[i], ints[i + 1]);
+    }
+
+    @Benchmark
+    public String encodeInt() {
+        int i = next();
+        return MovementScript.encode(ints[i], ints[i + 1]);
+    }
+
+    @Benchmark
+    public String formatFloat() {
+        int i = next();
+        return String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%f,%f)", floats[i], floats[i + 1]);
+    }
+
+    @Benchmark
+    public String encodeFloat() {
+        int i = next();
+        return MovementScript.encode(floats[i], floats[i + 1]);
+    }
+}
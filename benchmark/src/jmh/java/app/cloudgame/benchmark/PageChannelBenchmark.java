@@ -0,0 +1,113 @@
+package app.cloudgame.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.PageChannel;
+import app.cloudgame.core.PointerPipeline;
+import app.cloudgame.core.RecordingScriptSink;
+
+/**
+ * Captured movement through PointerPipeline and PageChannel into memory, the whole native side of the
+ * event to script path. The score is events per second; {@code scripts} and {@code bytes} report what
+ * reached the page per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PageChannelBenchmark {
+
+    // one second of a 1000 Hz mouse
+    private static final int EVENTS = 1000;
+
+    @Param({"0", "8"})
+    public int flushIntervalMs;
+
+    @Param({"1.0", "1.5"})
+    public float speed;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traffic {
+        public long scripts;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            scripts = 0;
+            bytes = 0;
+        }
+    }
+
+    // flushes are run every flushIntervalMs events, i.e. milliseconds at 1000 Hz
+    private static final class ManualScheduler implements PointerPipeline.Scheduler {
+        private Runnable pending;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            pending = task;
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (pending == task) {
+                pending = null;
+            }
+        }
+
+        void runPending() {
+            Runnable task = pending;
+            pending = null;
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    private final float[] dx = new float[EVENTS];
+    private final float[] dy = new float[EVENTS];
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private PageChannel channel;
+    private PointerPipeline pipeline;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < EVENTS; i++) {
+            dx[i] = random.nextInt(41) - 20;
+            dy[i] = random.nextInt(41) - 20;
+        }
+        channel = new PageChannel(new RecordingScriptSink(false));
+        pipeline = new PointerPipeline(channel, scheduler);
+        pipeline.setSpeed(speed);
+        pipeline.setFlushInterval(flushIntervalMs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void movement(Traffic traffic) {
+        long scripts = channel.getScriptCount();
+        long bytes = channel.getByteCount();
+        for (int i = 0; i < EVENTS; i++) {
+            if (flushIntervalMs > 0 && i % flushIntervalMs == 0) {
+                scheduler.runPending();
+            }
+            pipeline.onMove(dx[i], dy[i]);
+        }
+        scheduler.runPending();
+        traffic.scripts += channel.getScriptCount() - scripts;
+        traffic.bytes += channel.getByteCount() - bytes;
+    }
+}
@@ -0,0 +1,61 @@
+package app.cloudgame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.PageStartScripts;
+
+/**
+ * Runs on every settings commit. {@code hashSet} is the former Configuration.loadPageStartScripts,
+ * which hashed the full text of each script (a fresh copy here, as after re-reading the assets).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PageStartScriptsBenchmark {
+
+    private final Map<String, String> scriptMap = new HashMap<>();
+    private final List<String> keys = Arrays.asList("inject_console", "enhance_pc", "init_bridge");
+
+    @Setup
+    public void setup() {
+        // roughly the asset sizes: vconsole.js is large, the other two are a few KB
+        scriptMap.put("inject_console", script(150_000));
+        scriptMap.put("enhance_pc", script(4_000));
+        scriptMap.put("init_bridge", script(16_000));
+    }
+
+    private static String script(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + i % 26);
+        }
+        return new String(chars);
+    }
+
+    @Benchmark
+    public String[] hashSet() {
+        HashSet<String> scripts = new HashSet<>();
+        for (String key : keys) {
+            scripts.add(new String(scriptMap.get(key)));
+        }
+        return scripts.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String[] select() {
+        return PageStartScripts.select(scriptMap, keys);
+    }
+}
@@ -0,0 +1,29 @@
+package app.cloudgame.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import app.cloudgame.core.Versions;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionBenchmark {
+
+    private final String current = "v0.9.3";
+    private final String[] candidates = {"v0.9.3", "v0.9.4", "v0.10.0", "v1.0", "v0.9.3.1", "v0.8.12"};
+
+    @Benchmark
+    public void isNewerVersion(Blackhole blackhole) {
+        for (String candidate : candidates) {
+            blackhole.consume(Versions.isNewerVersion(current, candidate));
+        }
+    }
+}
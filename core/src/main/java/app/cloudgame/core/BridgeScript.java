@@ -0,0 +1,66 @@
+package app.cloudgame.core;
+
+/**
+ * Encodes the {@code window.CG_EVAL_CALLBACK(id, result)} call answering a page to native bridge call.
+ * String literals are escaped exactly like Gson's default (HTML safe) writer, which used to build them.
+ */
+public final class BridgeScript {
+
+    private static final String CALLBACK_PREFIX = "window.CG_EVAL_CALLBACK(";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BridgeScript() {
+    }
+
+    public static String callback(String callbackId, String result) {
+        int length = CALLBACK_PREFIX.length() + 8
+                + (callbackId == null ? 4 : callbackId.length()) + (result == null ? 4 : result.length());
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(CALLBACK_PREFIX);
+        appendString(sb, callbackId);
+        sb.append(", ");
+        appendString(sb, result);
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Appends {@code value} as a quoted JSON/JS string literal, {@code null} for null.
+     */
+    public static StringBuilder appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement = null;
+            switch (c) {
+                case '"': replacement = "\\\""; break;
+                case '\\': replacement = "\\\\"; break;
+                case '\t': replacement = "\\t"; break;
+                case '\b': replacement = "\\b"; break;
+                case '\n': replacement = "\\n"; break;
+                case '\r': replacement = "\\r"; break;
+                case '\f': replacement = "\\f"; break;
+                default:
+                    if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\''
+                            || c == 0x2028 || c == 0x2029) {
+                        break;
+                    }
+                    continue;
+            }
+            sb.append(value, last, i);
+            if (replacement != null) {
+                sb.append(replacement);
+            } else {
+                sb.append("\\u").append(HEX[c >> 12 & 0xf]).append(HEX[c >> 8 & 0xf])
+                        .append(HEX[c >> 4 & 0xf]).append(HEX[c & 0xf]);
+            }
+            last = i + 1;
+        }
+        sb.append(value, last, length);
+        return sb.append('"');
+    }
+}
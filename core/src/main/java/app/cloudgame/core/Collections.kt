@@ -0,0 +1,45 @@
+package app.cloudgame.core
+
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.google.gson.reflect.TypeToken
+
+enum class EntryType {
+    Web,
+    Add
+}
+
+data class UiEntry(
+    val uuid: String,
+    val scheme: String,
+    val iconUrl: String,
+    val name: String,
+    var preScript: List<String>? = null,
+    val type: EntryType = EntryType.Web,
+    val profile: String? = null,
+    // stream frame rate used to pick the display mode, 0 follows the measured video rate
+    val frameRate: Int = 0,
+    // KeyMap source applied while the page holds the pointer
+    val keymap: String? = null
+)
+
+/**
+ * JSON form of the launcher collection as stored in the configuration.
+ */
+object EntryCodec {
+    private val gson = Gson()
+    private val listType = object : TypeToken<List<UiEntry>>() {}.type
+
+    fun encode(entries: List<UiEntry>): String = gson.toJson(entries)
+
+    /**
+     * @return null when the stored json can not be parsed
+     */
+    fun decode(json: String): List<UiEntry>? {
+        return try {
+            gson.fromJson(json, listType)
+        } catch (e: JsonParseException) {
+            null
+        }
+    }
+}
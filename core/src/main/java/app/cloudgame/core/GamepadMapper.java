@@ -0,0 +1,168 @@
+package app.cloudgame.core;
+
+/**
+ * Turns gamepad axes into what a keyboard and mouse game expects: the right stick moves the mouse, the
+ * left stick and the hat press direction keys, the triggers press mouse buttons. Keys and buttons
+ * change as soon as the axes do; movement is integrated on {@link #tick} so it is even at any input
+ * rate. Only whole pixels are emitted, the rest carries over so slow aim is not lost.
+ * <p>
+ * Not thread safe.
+ */
+public final class GamepadMapper {
+
+    public interface Output {
+        void onMove(float dx, float dy);
+
+        void onKey(int keyCode, boolean down);
+
+        /**
+         * @param button DOM button number, 0 primary, 2 secondary
+         */
+        void onMouseButton(int button, boolean down);
+    }
+
+    public static final int TICK_HZ = 250;
+    public static final int TICK_MS = 1000 / TICK_HZ;
+
+    // index into the direction key codes
+    public static final int UP = 0;
+    public static final int LEFT = 1;
+    public static final int DOWN = 2;
+    public static final int RIGHT = 3;
+
+    // a key goes down past PRESS and only comes back up below RELEASE, so noise at the edge does not chatter
+    static final float PRESS = 0.5f;
+    static final float RELEASE = 0.35f;
+
+    private final Output mOutput;
+    private final int[] mStickKeys;
+    private final int[] mHatKeys;
+
+    private float mDeadZone = 0.15f;
+    private float mCurve = 2.f;
+    private float mSpeed = 1500.f;
+
+    private float mRightX;
+    private float mRightY;
+    private float mCarryX;
+    private float mCarryY;
+    private final boolean[] mStickDown = new boolean[4];
+    private final boolean[] mHatDown = new boolean[4];
+    private boolean mPrimaryDown;
+    private boolean mSecondaryDown;
+
+    /**
+     * @param stickKeys key codes pressed by the left stick, by {@link #UP} ... {@link #RIGHT}
+     * @param hatKeys key codes pressed by the hat (d-pad)
+     */
+    public GamepadMapper(Output output, int[] stickKeys, int[] hatKeys) {
+        mOutput = output;
+        mStickKeys = stickKeys.clone();
+        mHatKeys = hatKeys.clone();
+    }
+
+    /**
+     * Radial dead zone of the right stick, as a fraction of full deflection.
+     */
+    public void setDeadZone(float deadZone) {
+        mDeadZone = Math.max(0.f, Math.min(0.9f, deadZone));
+    }
+
+    /**
+     * Exponent applied to the stick deflection past the dead zone: 1 is linear, larger values give finer
+     * control near the center.
+     */
+    public void setCurve(float curve) {
+        mCurve = Math.max(1.f, curve);
+    }
+
+    /**
+     * Pixels per second at full deflection.
+     */
+    public void setSpeed(float pixelsPerSecond) {
+        mSpeed = pixelsPerSecond;
+    }
+
+    public float getDeadZone() {
+        return mDeadZone;
+    }
+
+    public void setLeftStick(float x, float y) {
+        updateDirections(mStickDown, mStickKeys, x, y);
+    }
+
+    public void setRightStick(float x, float y) {
+        mRightX = x;
+        mRightY = y;
+    }
+
+    public void setHat(float x, float y) {
+        updateDirections(mHatDown, mHatKeys, x, y);
+    }
+
+    /**
+     * @param left the left trigger, presses the secondary button
+     * @param right the right trigger, presses the primary button
+     */
+    public void setTriggers(float left, float right) {
+        if (mPrimaryDown ? right < RELEASE : right > PRESS) {
+            mPrimaryDown = !mPrimaryDown;
+            mOutput.onMouseButton(0, mPrimaryDown);
+        }
+        if (mSecondaryDown ? left < RELEASE : left > PRESS) {
+            mSecondaryDown = !mSecondaryDown;
+            mOutput.onMouseButton(2, mSecondaryDown);
+        }
+    }
+
+    /**
+     * Advances movement by {@code dtMs}.
+     *
+     * @return false once the right stick rests in the dead zone and ticking can stop
+     */
+    public boolean tick(float dtMs) {
+        float magnitude = (float) Math.sqrt(mRightX * mRightX + mRightY * mRightY);
+        if (magnitude <= mDeadZone) {
+            return false;
+        }
+        float deflection = (Math.min(magnitude, 1.f) - mDeadZone) / (1.f - mDeadZone);
+        float distance = (float) Math.pow(deflection, mCurve) * mSpeed * dtMs / 1000.f;
+        float x = mCarryX + mRightX / magnitude * distance;
+        float y = mCarryY + mRightY / magnitude * distance;
+        float wholeX = (int) x;
+        float wholeY = (int) y;
+        mCarryX = x - wholeX;
+        mCarryY = y - wholeY;
+        if (wholeX != 0 || wholeY != 0) {
+            mOutput.onMove(wholeX, wholeY);
+        }
+        return true;
+    }
+
+    /**
+     * Releases everything held, e.g. when the gamepad goes away or the page loses the pointer.
+     */
+    public void reset() {
+        setLeftStick(0, 0);
+        setHat(0, 0);
+        setTriggers(0, 0);
+        mRightX = 0;
+        mRightY = 0;
+        mCarryX = 0;
+        mCarryY = 0;
+    }
+
+    private void updateDirections(boolean[] down, int[] keys, float x, float y) {
+        update(down, keys, UP, -y);
+        update(down, keys, DOWN, y);
+        update(down, keys, LEFT, -x);
+        update(down, keys, RIGHT, x);
+    }
+
+    private void update(boolean[] down, int[] keys, int direction, float value) {
+        if (down[direction] ? value < RELEASE : value > PRESS) {
+            down[direction] = !down[direction];
+            mOutput.onKey(keys[direction], down[direction]);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package app.cloudgame.core;
+
+/**
+ * A timed key sequence bound to a key by a {@link KeyMap}. Steps are kept in flat arrays; every key the
+ * sequence presses is released by its end.
+ */
+public final class KeyMacro {
+
+    public static final int PRESS = 0;
+    public static final int RELEASE = 1;
+    public static final int WAIT = 2;
+
+    private final int[] mActions;
+    private final int[] mValues;
+
+    KeyMacro(int[] actions, int[] values) {
+        mActions = actions;
+        mValues = values;
+    }
+
+    public int size() {
+        return mActions.length;
+    }
+
+    /**
+     * {@link #PRESS}, {@link #RELEASE} or {@link #WAIT}.
+     */
+    public int action(int step) {
+        return mActions[step];
+    }
+
+    /**
+     * The key code to press or release, or the milliseconds to wait.
+     */
+    public int value(int step) {
+        return mValues[step];
+    }
+}
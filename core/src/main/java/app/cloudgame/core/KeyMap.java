@@ -0,0 +1,199 @@
+package app.cloudgame.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A per entry keyboard layout compiled into a flat table indexed by key code, so looking a key up is
+ * one array read. The source has one binding per line, {@code #} starts a comment:
+ * <pre>
+ * CAPS_LOCK = ESCAPE                  remap
+ * Q = NONE                            swallow
+ * F1 = +SHIFT_LEFT W 500ms -SHIFT_LEFT  macro: +press, -release, tap, wait
+ * </pre>
+ * Key names are the platform's key code names without the {@code KEYCODE_} prefix.
+ */
+public final class KeyMap {
+
+    public interface KeyCodes {
+        /**
+         * @return the key code named {@code name}, or -1
+         */
+        int resolve(String name);
+    }
+
+    /**
+     * Key code a swallowed key maps to, KEYCODE_UNKNOWN on Android.
+     */
+    public static final int NONE = 0;
+    // above KeyEvent.getMaxKeyCode(), codes past the table are never remapped
+    public static final int TABLE_SIZE = 512;
+    // a tap holds the key for about one frame so games polling per frame see it
+    public static final int TAP_HOLD_MS = 16;
+    static final int MAX_WAIT_MS = 10_000;
+    static final int MAX_STEPS = 256;
+
+    private static final int MACRO_FLAG = 0x40000000;
+
+    private final int[] mTable;
+    private final KeyMacro[] mMacros;
+    private final int mBindings;
+
+    private KeyMap(int[] table, KeyMacro[] macros, int bindings) {
+        mTable = table;
+        mMacros = macros;
+        mBindings = bindings;
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the line that does not parse
+     */
+    public static KeyMap parse(String source, KeyCodes codes) {
+        int[] table = new int[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = i;
+        }
+        List<KeyMacro> macros = new ArrayList<>();
+        int bindings = 0;
+        String[] lines = source == null ? new String[0] : source.split("\n");
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n];
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                throw error(n, "expected KEY = ...");
+            }
+            int from = key(line.substring(0, eq).trim(), codes, n);
+            if (from == NONE) {
+                throw error(n, "NONE can not be bound");
+            }
+            if (table[from] != from) {
+                throw error(n, "key bound twice");
+            }
+            String target = line.substring(eq + 1).trim();
+            if (target.isEmpty()) {
+                throw error(n, "expected a key or macro after =");
+            }
+            String[] steps = target.split("\\s+");
+            if (steps.length == 1 && isKeyName(steps[0])) {
+                table[from] = key(steps[0], codes, n);
+            } else {
+                macros.add(macro(steps, codes, n));
+                table[from] = MACRO_FLAG | (macros.size() - 1);
+            }
+            bindings++;
+        }
+        return new KeyMap(table, macros.toArray(new KeyMacro[0]), bindings);
+    }
+
+    /**
+     * @return {@code keyCode} itself when unbound, {@link #NONE} when swallowed, a macro handle when
+     * {@link #isMacro}, the key code to send otherwise
+     */
+    public int lookup(int keyCode) {
+        return keyCode >= 0 && keyCode < TABLE_SIZE ? mTable[keyCode] : keyCode;
+    }
+
+    public static boolean isMacro(int mapped) {
+        return (mapped & MACRO_FLAG) != 0;
+    }
+
+    public KeyMacro getMacro(int mapped) {
+        return mMacros[mapped & ~MACRO_FLAG];
+    }
+
+    public boolean isEmpty() {
+        return mBindings == 0;
+    }
+
+    private static KeyMacro macro(String[] steps, KeyCodes codes, int line) {
+        int[] actions = new int[MAX_STEPS];
+        int[] values = new int[MAX_STEPS];
+        boolean[] pressed = new boolean[TABLE_SIZE];
+        int count = 0;
+        for (String step : steps) {
+            if (count + 3 > MAX_STEPS) {
+                throw error(line, "macro longer than " + MAX_STEPS + " steps");
+            }
+            char first = step.charAt(0);
+            if (isWait(step)) {
+                int ms;
+                try {
+                    ms = Integer.parseInt(step.substring(0, step.length() - 2));
+                } catch (NumberFormatException e) {
+                    throw error(line, "bad wait " + step);
+                }
+                if (ms > MAX_WAIT_MS) {
+                    throw error(line, "wait above " + MAX_WAIT_MS + " ms");
+                }
+                actions[count] = KeyMacro.WAIT;
+                values[count++] = ms;
+            } else if (first == '+' || first == '-') {
+                int code = macroKey(step.substring(1), codes, line);
+                pressed[code] = first == '+';
+                actions[count] = first == '+' ? KeyMacro.PRESS : KeyMacro.RELEASE;
+                values[count++] = code;
+            } else {
+                int code = macroKey(step, codes, line);
+                actions[count] = KeyMacro.PRESS;
+                values[count++] = code;
+                actions[count] = KeyMacro.WAIT;
+                values[count++] = TAP_HOLD_MS;
+                actions[count] = KeyMacro.RELEASE;
+                values[count++] = code;
+            }
+        }
+        for (int code = 0; code < TABLE_SIZE; code++) {
+            if (pressed[code]) {
+                if (count == MAX_STEPS) {
+                    throw error(line, "macro longer than " + MAX_STEPS + " steps");
+                }
+                actions[count] = KeyMacro.RELEASE;
+                values[count++] = code;
+            }
+        }
+        return new KeyMacro(Arrays.copyOf(actions, count), Arrays.copyOf(values, count));
+    }
+
+    private static int macroKey(String name, KeyCodes codes, int line) {
+        int code = key(name, codes, line);
+        if (code == NONE) {
+            throw error(line, "NONE can not be pressed");
+        }
+        return code;
+    }
+
+    private static boolean isKeyName(String token) {
+        return !token.isEmpty() && token.charAt(0) != '+' && token.charAt(0) != '-' && !isWait(token);
+    }
+
+    // digits alone name the number keys, waits carry a unit
+    private static boolean isWait(String token) {
+        return token.length() > 2 && Character.isDigit(token.charAt(0)) && token.endsWith("ms");
+    }
+
+    private static int key(String name, KeyCodes codes, int line) {
+        String upper = name.toUpperCase(Locale.ENGLISH);
+        if ("NONE".equals(upper)) {
+            return NONE;
+        }
+        int code = upper.isEmpty() ? -1 : codes.resolve(upper);
+        if (code <= 0 || code >= TABLE_SIZE) {
+            throw error(line, "unknown key " + name);
+        }
+        return code;
+    }
+
+    private static IllegalArgumentException error(int line, String message) {
+        return new IllegalArgumentException("line " + (line + 1) + ": " + message);
+    }
+}
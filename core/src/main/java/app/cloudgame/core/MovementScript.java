@@ -0,0 +1,119 @@
+package app.cloudgame.core;
+
+import java.util.Locale;
+
+/**
+ * Builds the {@code window.EVAL_MOVEMENT_CB(x,y)} call sent for every captured mouse movement. Output
+ * matches the {@code String.format(Locale.ENGLISH, ...)} calls it replaces, without the formatter's
+ * parsing and boxing on each event. Movement mixed with buttons or wheel goes as one
+ * {@code window.EVAL_POINTER_CB([op,a,b,...])} call instead, see {@link #appendOps}.
+ */
+public final class MovementScript {
+
+    public static final int OP_MOVE = 0;
+    public static final int OP_BUTTON = 1;
+    public static final int OP_WHEEL = 2;
+
+    private static final String PREFIX = "window.EVAL_MOVEMENT_CB(";
+    private static final String OPS_PREFIX = "window.EVAL_POINTER_CB([";
+    private static final long FRACTION_SCALE = 1_000_000L;
+    // scaled by FRACTION_SCALE this still fits a long with room to spare
+    private static final double MAX_FIXED = 1e12;
+
+    private MovementScript() {
+    }
+
+    /**
+     * Same as {@code %d,%d}.
+     */
+    public static String encode(int x, int y) {
+        StringBuilder sb = new StringBuilder(PREFIX.length() + 24);
+        return appendTo(sb, x, y).toString();
+    }
+
+    /**
+     * Same as {@code %f,%f}, six fraction digits.
+     */
+    public static String encode(float x, float y) {
+        StringBuilder sb = new StringBuilder(PREFIX.length() + 40);
+        return appendTo(sb, x, y).toString();
+    }
+
+    public static StringBuilder appendTo(StringBuilder sb, int x, int y) {
+        return sb.append(PREFIX).append(x).append(',').append(y).append(')');
+    }
+
+    public static StringBuilder appendTo(StringBuilder sb, float x, float y) {
+        sb.append(PREFIX);
+        appendFixed(sb, x);
+        sb.append(',');
+        appendFixed(sb, y);
+        return sb.append(')');
+    }
+
+    /**
+     * Adds the samples a movement was coalesced from as a third argument, {@code [x0,y0,x1,y1,...]}, to a
+     * call written by {@code appendTo}.
+     *
+     * @param whole whole pixels like the int encoding, otherwise six fraction digits
+     */
+    public static StringBuilder appendSamples(StringBuilder sb, float[] samples, int count, float scale, boolean whole) {
+        // replaces the closing parenthesis
+        sb.setLength(sb.length() - 1);
+        sb.append(",[");
+        for (int i = 0; i < count * 2; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (whole) {
+                sb.append((int) (samples[i] * scale));
+            } else {
+                appendFixed(sb, samples[i] * scale);
+            }
+        }
+        return sb.append("])");
+    }
+
+    /**
+     * Writes the pointer op stream, three numbers per op: {@link #OP_MOVE} dx dy, {@link #OP_BUTTON}
+     * button pressed (1 or 0), {@link #OP_WHEEL} dx dy. The page runs them in order.
+     */
+    public static StringBuilder appendOps(StringBuilder sb, float[] ops, int count) {
+        sb.append(OPS_PREFIX);
+        for (int i = 0; i < count * 3; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            float value = ops[i];
+            if (value == (int) value) {
+                sb.append((int) value);
+            } else {
+                appendFixed(sb, value);
+            }
+        }
+        return sb.append("])");
+    }
+
+    static void appendFixed(StringBuilder sb, float value) {
+        if (!(Math.abs(value) < MAX_FIXED)) {
+            // NaN, infinite or too large for the long arithmetic below, only reachable with broken input
+            sb.append(String.format(Locale.ENGLISH, "%f", value));
+            return;
+        }
+        // %f formats the float widened to double, rounding half up
+        double d = value;
+        // the sign bit, so -0.0 gets its minus like with the formatter
+        if (Float.floatToRawIntBits(value) < 0) {
+            sb.append('-');
+            d = -d;
+        }
+        long scaled = (long) Math.floor(d * FRACTION_SCALE + 0.5);
+        long whole = scaled / FRACTION_SCALE;
+        long fraction = scaled % FRACTION_SCALE;
+        sb.append(whole).append('.');
+        for (long div = FRACTION_SCALE / 10; div > fraction && div > 1; div /= 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
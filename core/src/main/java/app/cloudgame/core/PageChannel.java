@@ -0,0 +1,85 @@
+package app.cloudgame.core;
+
+/**
+ * All native to page traffic of a game view goes through here: input, bridge callbacks, page start
+ * scripts and the {@code window.CG_*} settings hooks of inject.js. Keeps script and byte totals so
+ * throughput can be measured with any {@link ScriptSink} behind it.
+ */
+public final class PageChannel implements ScriptSink {
+
+    private final ScriptSink mSink;
+    private long mScriptCount;
+    private long mByteCount;
+
+    public PageChannel(ScriptSink sink) {
+        mSink = sink;
+    }
+
+    @Override
+    public void evaluate(String script, ResultCallback callback) {
+        mScriptCount++;
+        // scripts are ASCII apart from page supplied strings, the length is close enough
+        mByteCount += script.length();
+        mSink.evaluate(script, callback);
+    }
+
+    public void movement(int dx, int dy) {
+        evaluate(MovementScript.encode(dx, dy));
+    }
+
+    public void movement(float dx, float dy) {
+        evaluate(MovementScript.encode(dx, dy));
+    }
+
+    /**
+     * Answers a bridge call made with {@code callbackId}.
+     */
+    public void callback(String callbackId, String result) {
+        evaluate(BridgeScript.callback(callbackId, result));
+    }
+
+    public void pointerLockChange(boolean locked, String elementId, ResultCallback callback) {
+        StringBuilder sb = new StringBuilder(48 + (elementId == null ? 4 : elementId.length()));
+        sb.append("window.POINTER_LOCK_CHANGE_CB(").append(locked).append(", ");
+        BridgeScript.appendString(sb, elementId);
+        evaluate(sb.append(')').toString(), callback);
+    }
+
+    public void trimMemory(int level) {
+        evaluate("window.CG_TRIM_MEMORY && window.CG_TRIM_MEMORY(" + level + ")");
+    }
+
+    public void statsInterval(int statsIntervalMs) {
+        evaluate("window.CG_SET_STATS_INTERVAL && window.CG_SET_STATS_INTERVAL(" + statsIntervalMs + ")");
+    }
+
+    public void videoFrameStats(boolean enabled) {
+        evaluate("window.CG_SET_VIDEO_FRAME_STATS && window.CG_SET_VIDEO_FRAME_STATS(" + enabled + ")");
+    }
+
+    /**
+     * @param width CSS width to lay the page out at, 0 keeps the page's own viewport
+     */
+    public void viewportWidth(int width) {
+        evaluate("window.CG_SET_VIEWPORT_WIDTH && window.CG_SET_VIEWPORT_WIDTH(" + width + ")");
+    }
+
+    /**
+     * All of the above at once, for a freshly injected page.
+     *
+     * @param viewportWidth CSS width to lay the page out at, 0 keeps the page's own viewport
+     */
+    public void pageSettings(int statsIntervalMs, boolean videoFrameStats, int viewportWidth) {
+        evaluate("window.CG_SET_STATS_INTERVAL && window.CG_SET_STATS_INTERVAL(" + statsIntervalMs + ");"
+                + "window.CG_SET_VIDEO_FRAME_STATS && window.CG_SET_VIDEO_FRAME_STATS(" + videoFrameStats + ");"
+                + "window.CG_SET_VIEWPORT_WIDTH && window.CG_SET_VIEWPORT_WIDTH(" + viewportWidth + ")");
+    }
+
+    public long getScriptCount() {
+        return mScriptCount;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+}
@@ -0,0 +1,36 @@
+package app.cloudgame.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the scripts injected at every page start. Scripts are returned in the order of {@code keys},
+ * skipping missing ones and duplicates, so the bridge setup always runs in the same order.
+ */
+public final class PageStartScripts {
+
+    private PageStartScripts() {
+    }
+
+    public static String[] select(Map<String, String> scriptMap, List<String> keys) {
+        List<String> scripts = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String script = scriptMap.get(keys.get(i));
+            // a handful of scripts, a linear scan beats hashing each full script text
+            if (script != null && !containsSame(scripts, script)) {
+                scripts.add(script);
+            }
+        }
+        return scripts.toArray(new String[0]);
+    }
+
+    private static boolean containsSame(List<String> scripts, String script) {
+        for (int i = 0; i < scripts.size(); i++) {
+            if (scripts.get(i) == script || scripts.get(i).equals(script)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,162 @@
+package app.cloudgame.core;
+
+/**
+ * Single owner of the pointer lock of a game view: what the page asked for, whether the window holds
+ * pointer capture, and what to do when the two disagree.
+ * <ul>
+ * <li>UNLOCKED: the page holds no lock; capture granted now is given back.</li>
+ * <li>ACQUIRING: capture was requested. Requests repeated while one is in flight are dropped, unless
+ * it is older than {@link #REQUEST_TIMEOUT_MS} and was likely ignored by the platform.</li>
+ * <li>LOCKED: capture is held.</li>
+ * <li>SUSPENDED: the page still holds the lock but capture was lost to a dialog, another window or a
+ * device change. It is requested again as soon as the window has focus.</li>
+ * </ul>
+ * Times are uptime milliseconds passed in by the caller. Not thread safe.
+ */
+public final class PointerLockStateMachine {
+
+    public interface Host {
+        boolean hasWindowFocus();
+
+        void requestCapture();
+
+        void releaseCapture();
+
+        /**
+         * Tells the page, on every change of the capture it sees.
+         */
+        void onLockChanged(boolean locked, String elementId);
+    }
+
+    public enum State {
+        UNLOCKED,
+        ACQUIRING,
+        LOCKED,
+        SUSPENDED
+    }
+
+    public static final long REQUEST_TIMEOUT_MS = 1000;
+
+    private final Host mHost;
+    private State mState = State.UNLOCKED;
+    private String mElementId = "";
+    private long mRequestTime;
+
+    public PointerLockStateMachine(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * The page asked for the lock, or the player clicked into the game.
+     *
+     * @param elementId element to lock, null keeps the last one
+     * @return false when the request was dropped as a duplicate
+     */
+    public boolean requestLock(String elementId, long now) {
+        if (elementId != null) {
+            mElementId = elementId;
+        }
+        switch (mState) {
+            case LOCKED:
+                if (elementId != null) {
+                    // already captured, the page only needs to learn the new element
+                    mHost.onLockChanged(true, mElementId);
+                }
+                return false;
+            case ACQUIRING:
+                if (now - mRequestTime < REQUEST_TIMEOUT_MS) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        acquire(now);
+        return true;
+    }
+
+    /**
+     * The page exited the lock or the app takes the pointer back.
+     */
+    public void exitLock() {
+        State old = mState;
+        mState = State.UNLOCKED;
+        if (old == State.LOCKED || old == State.ACQUIRING) {
+            mHost.releaseCapture();
+        }
+    }
+
+    /**
+     * @return milliseconds from the request to capture being granted, -1 when nothing was waiting for it
+     */
+    public long onCaptureChanged(boolean captured, long now) {
+        if (captured) {
+            switch (mState) {
+                case UNLOCKED:
+                    // a late grant for a lock the page already left
+                    mHost.releaseCapture();
+                    return -1;
+                case LOCKED:
+                    return -1;
+                default:
+                    long latency = mState == State.ACQUIRING ? now - mRequestTime : -1;
+                    mState = State.LOCKED;
+                    mHost.onLockChanged(true, mElementId);
+                    return latency;
+            }
+        }
+        if (mState == State.LOCKED) {
+            mState = State.SUSPENDED;
+        }
+        mHost.onLockChanged(false, mElementId);
+        return -1;
+    }
+
+    /**
+     * @return true when capture is requested again
+     */
+    public boolean onWindowFocusChanged(boolean focused, long now) {
+        if (focused) {
+            if (mState == State.SUSPENDED) {
+                acquire(now);
+                return true;
+            }
+        } else if (mState == State.ACQUIRING) {
+            // capture is never granted to an unfocused window, ask again when focus returns
+            mState = State.SUSPENDED;
+        }
+        return false;
+    }
+
+    /**
+     * Requests capture again if the page holds the lock but the window lost capture without losing
+     * focus, e.g. after a mouse was re-plugged or the window was resized in place.
+     *
+     * @return true when capture is requested again
+     */
+    public boolean restore(long now) {
+        if (mState == State.SUSPENDED && mHost.hasWindowFocus()) {
+            acquire(now);
+            return true;
+        }
+        return false;
+    }
+
+    private void acquire(long now) {
+        if (!mHost.hasWindowFocus()) {
+            mState = State.SUSPENDED;
+            return;
+        }
+        mState = State.ACQUIRING;
+        mRequestTime = now;
+        mHost.requestCapture();
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public String getElementId() {
+        return mElementId;
+    }
+}
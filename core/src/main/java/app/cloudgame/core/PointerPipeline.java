@@ -0,0 +1,293 @@
+package app.cloudgame.core;
+
+/**
+ * Turns captured (relative) mouse movement into {@code EVAL_MOVEMENT_CB} scripts. Movement is either
+ * sent per event or summed and flushed every {@link #setFlushInterval flush interval}. When a script
+ * covers more than one sample, the samples are passed along for the page's {@code getCoalescedEvents()}.
+ * <p>
+ * Wheel and the buttons of inputs without native mouse events travel the same way, as ops of an
+ * {@code EVAL_POINTER_CB} script that also carries the movement before them, so the page sees everything
+ * in the order it happened. Button changes are sent at once, wheel follows the flush interval like
+ * movement.
+ * <p>
+ * Not thread safe, everything runs on the thread the {@link Scheduler} posts to.
+ */
+public final class PointerPipeline {
+
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    // a busy page falling behind merges the rest into the last sample
+    private static final int MAX_SAMPLES = 64;
+    private static final int MAX_OPS = 32;
+
+    private final ScriptSink mSink;
+    private final Scheduler mScheduler;
+    private final Runnable mFlushTask = this::flush;
+    private final StringBuilder mScript = new StringBuilder(64);
+    // x0, y0, x1, y1, ... of the movement not sent yet
+    private final float[] mSamples = new float[MAX_SAMPLES * 2];
+    private int mSampleCount;
+    // samples added since the last endMove
+    private int mMoveSampleCount;
+    // op, a, b, ... waiting to be sent, see MovementScript.appendOps
+    private final float[] mOps = new float[MAX_OPS * 3];
+    private int mOpCount;
+    // wheel pixels below one, kept for the next wheel event
+    private float mWheelX;
+    private float mWheelY;
+
+    private float mSpeed = 1.f;
+    private boolean mScaled;
+    // 0 sends every movement as it arrives
+    private int mFlushIntervalMs;
+    private float mPendingX;
+    private float mPendingY;
+    private boolean mFlushScheduled;
+
+    private long mMoveCount;
+    private long mTotalSampleCount;
+    private long mScriptCount;
+    private long mTotalOpCount;
+
+    public PointerPipeline(ScriptSink sink, Scheduler scheduler) {
+        mSink = sink;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Multiplier applied to every delta; at 1 deltas are sent as whole pixels.
+     */
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+        mScaled = speed != 1.f;
+    }
+
+    public void setFlushInterval(int intervalMs) {
+        mFlushIntervalMs = Math.max(0, intervalMs);
+        if (mFlushIntervalMs == 0 && mFlushScheduled) {
+            mScheduler.cancel(mFlushTask);
+            flush();
+        }
+    }
+
+    public int getFlushInterval() {
+        return mFlushIntervalMs;
+    }
+
+    /**
+     * One movement event made of a single sample.
+     */
+    public void onMove(float dx, float dy) {
+        addSample(dx, dy);
+        endMove();
+    }
+
+    /**
+     * Adds one sample of the event being delivered, oldest first; {@link #endMove()} completes the event.
+     */
+    public void addSample(float dx, float dy) {
+        mTotalSampleCount++;
+        mMoveSampleCount++;
+        mPendingX += dx;
+        mPendingY += dy;
+        if (mSampleCount == MAX_SAMPLES) {
+            mSamples[mSampleCount * 2 - 2] += dx;
+            mSamples[mSampleCount * 2 - 1] += dy;
+            return;
+        }
+        mSamples[mSampleCount * 2] = dx;
+        mSamples[mSampleCount * 2 + 1] = dy;
+        mSampleCount++;
+    }
+
+    /**
+     * Completes the event; does nothing when it brought no sample, e.g. all of it arrived without capture.
+     */
+    public void endMove() {
+        if (mMoveSampleCount == 0) {
+            return;
+        }
+        mMoveSampleCount = 0;
+        mMoveCount++;
+        if (mFlushIntervalMs > 0) {
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mScheduler.postDelayed(mFlushTask, mFlushIntervalMs);
+            }
+        } else {
+            float x = mPendingX;
+            float y = mPendingY;
+            mPendingX = 0;
+            mPendingY = 0;
+            send(x, y);
+        }
+    }
+
+    /**
+     * @param button DOM button number
+     */
+    public void button(int button, boolean down) {
+        addOp(MovementScript.OP_BUTTON, button, down ? 1 : 0);
+        // a press is never held back, it may start an action the player is waiting on
+        if (mFlushScheduled) {
+            mScheduler.cancel(mFlushTask);
+        }
+        flush();
+    }
+
+    /**
+     * Scrolls by pixels, which may be fractional as high resolution wheels report them; only whole
+     * pixels are sent, the rest is added to the next wheel event.
+     */
+    public void wheel(float dx, float dy) {
+        mWheelX += dx;
+        mWheelY += dy;
+        float x = (int) mWheelX;
+        float y = (int) mWheelY;
+        if (x == 0 && y == 0) {
+            return;
+        }
+        mWheelX -= x;
+        mWheelY -= y;
+        addOp(MovementScript.OP_WHEEL, x, y);
+        if (mFlushIntervalMs > 0) {
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mScheduler.postDelayed(mFlushTask, mFlushIntervalMs);
+            }
+        } else {
+            flush();
+        }
+    }
+
+    public void flush() {
+        mFlushScheduled = false;
+        if (mOpCount > 0) {
+            addMovementOp();
+            sendOps();
+            return;
+        }
+        float x = mPendingX;
+        float y = mPendingY;
+        if (mScaled) {
+            mPendingX = 0;
+            mPendingY = 0;
+        } else {
+            // whole pixels are sent, the remainder carries over to the next flush
+            x = (int) x;
+            y = (int) y;
+            mPendingX -= x;
+            mPendingY -= y;
+        }
+        if (x != 0 || y != 0) {
+            send(x, y);
+        }
+    }
+
+    /**
+     * Drops pending movement, e.g. when pointer capture is lost.
+     */
+    public void reset() {
+        if (mFlushScheduled) {
+            mScheduler.cancel(mFlushTask);
+            mFlushScheduled = false;
+        }
+        mPendingX = 0;
+        mPendingY = 0;
+        mSampleCount = 0;
+        mMoveSampleCount = 0;
+        mOpCount = 0;
+        mWheelX = 0;
+        mWheelY = 0;
+    }
+
+    public long getMoveCount() {
+        return mMoveCount;
+    }
+
+    public long getSampleCount() {
+        return mTotalSampleCount;
+    }
+
+    public long getScriptCount() {
+        return mScriptCount;
+    }
+
+    /**
+     * Button and wheel ops sent, movement ops not counted.
+     */
+    public long getOpCount() {
+        return mTotalOpCount;
+    }
+
+    private void addOp(int op, float a, float b) {
+        // the movement so far goes first to keep the order
+        addMovementOp();
+        if (mOpCount == MAX_OPS) {
+            sendOps();
+        }
+        putOp(op, a, b);
+        mTotalOpCount++;
+    }
+
+    private void addMovementOp() {
+        float x = mPendingX;
+        float y = mPendingY;
+        if (mScaled) {
+            mPendingX = 0;
+            mPendingY = 0;
+            x *= mSpeed;
+            y *= mSpeed;
+        } else {
+            x = (int) x;
+            y = (int) y;
+            mPendingX -= x;
+            mPendingY -= y;
+        }
+        // the samples only serve getCoalescedEvents of a movement-only script
+        mSampleCount = 0;
+        if (x != 0 || y != 0) {
+            if (mOpCount == MAX_OPS) {
+                sendOps();
+            }
+            putOp(MovementScript.OP_MOVE, x, y);
+        }
+    }
+
+    private void putOp(int op, float a, float b) {
+        int i = mOpCount * 3;
+        mOps[i] = op;
+        mOps[i + 1] = a;
+        mOps[i + 2] = b;
+        mOpCount++;
+    }
+
+    private void sendOps() {
+        mScriptCount++;
+        StringBuilder sb = mScript;
+        sb.setLength(0);
+        MovementScript.appendOps(sb, mOps, mOpCount);
+        mOpCount = 0;
+        mSink.evaluate(sb.toString());
+    }
+
+    private void send(float dx, float dy) {
+        mScriptCount++;
+        StringBuilder sb = mScript;
+        sb.setLength(0);
+        if (mScaled) {
+            MovementScript.appendTo(sb, dx * mSpeed, dy * mSpeed);
+        } else {
+            MovementScript.appendTo(sb, (int) dx, (int) dy);
+        }
+        if (mSampleCount > 1) {
+            MovementScript.appendSamples(sb, mSamples, mSampleCount, mSpeed, !mScaled);
+        }
+        mSampleCount = 0;
+        mSink.evaluate(sb.toString());
+    }
+}
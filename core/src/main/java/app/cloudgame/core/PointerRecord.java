@@ -0,0 +1,40 @@
+package app.cloudgame.core;
+
+import java.util.Arrays;
+
+/**
+ * One captured pointer event with its batched (historical) samples, oldest first; the last sample is
+ * the event's own position. Instances are reused by {@link PointerTraceReader}.
+ */
+public final class PointerRecord {
+
+    public int action;
+    public int buttonState;
+    public int sampleCount;
+    public long[] times = new long[8];
+    public float[] xs = new float[8];
+    public float[] ys = new float[8];
+
+    public void clear(int action, int buttonState) {
+        this.action = action;
+        this.buttonState = buttonState;
+        sampleCount = 0;
+    }
+
+    public void addSample(long timeMs, float x, float y) {
+        if (sampleCount == times.length) {
+            int capacity = sampleCount * 2;
+            times = Arrays.copyOf(times, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        times[sampleCount] = timeMs;
+        xs[sampleCount] = x;
+        ys[sampleCount] = y;
+        sampleCount++;
+    }
+
+    public long eventTime() {
+        return sampleCount == 0 ? 0 : times[sampleCount - 1];
+    }
+}
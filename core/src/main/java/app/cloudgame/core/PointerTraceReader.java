@@ -0,0 +1,76 @@
+package app.cloudgame.core;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads files written by {@link PointerTraceWriter}.
+ */
+public final class PointerTraceReader implements AutoCloseable {
+
+    private final DataInputStream mIn;
+    private final long mStartWallTime;
+    private long mLastTime;
+    private boolean mHasTime;
+
+    public PointerTraceReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(in);
+        if (mIn.readInt() != PointerTraceWriter.MAGIC) {
+            throw new IOException("not a pointer trace");
+        }
+        int version = mIn.readUnsignedShort();
+        if (version != PointerTraceWriter.VERSION) {
+            throw new IOException("unsupported pointer trace version " + version);
+        }
+        mStartWallTime = mIn.readLong();
+    }
+
+    public long getStartWallTime() {
+        return mStartWallTime;
+    }
+
+    /**
+     * Fills {@code record} with the next event.
+     *
+     * @return false at the end of the trace
+     */
+    public boolean next(PointerRecord record) throws IOException {
+        int action = mIn.read();
+        if (action < 0) {
+            return false;
+        }
+        record.clear(action, (int) readVarLong());
+        long count = readVarLong();
+        for (long i = 0; i < count; i++) {
+            long zigzag = readVarLong();
+            long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+            long time = mHasTime ? mLastTime + delta : delta;
+            mLastTime = time;
+            mHasTime = true;
+            record.addSample(time, mIn.readFloat(), mIn.readFloat());
+        }
+        return true;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = mIn.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
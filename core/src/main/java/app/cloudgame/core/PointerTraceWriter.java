@@ -0,0 +1,62 @@
+package app.cloudgame.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact binary form of captured pointer events, read back by {@link PointerTraceReader}.
+ * <pre>
+ * header: int magic 'CGPR', short version, long start wall time (ms)
+ * record: byte action, varint button state, varint sample count,
+ *         per sample: zigzag varlong time delta to the previous sample (ms), float x, float y
+ * </pre>
+ */
+public final class PointerTraceWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x43475052;
+    static final int VERSION = 1;
+
+    private final DataOutputStream mOut;
+    private long mLastTime;
+    private boolean mHasTime;
+
+    public PointerTraceWriter(OutputStream out, long startWallTime) throws IOException {
+        mOut = new DataOutputStream(out);
+        mOut.writeInt(MAGIC);
+        mOut.writeShort(VERSION);
+        mOut.writeLong(startWallTime);
+    }
+
+    public void write(PointerRecord record) throws IOException {
+        mOut.writeByte(record.action);
+        writeVarLong(record.buttonState & 0xffffffffL);
+        writeVarLong(record.sampleCount);
+        for (int i = 0; i < record.sampleCount; i++) {
+            long time = record.times[i];
+            long delta = mHasTime ? time - mLastTime : time;
+            mLastTime = time;
+            mHasTime = true;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            mOut.writeFloat(record.xs[i]);
+            mOut.writeFloat(record.ys[i]);
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            mOut.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mOut.writeByte((int) value);
+    }
+
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+    }
+}
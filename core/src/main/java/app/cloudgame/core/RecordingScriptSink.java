@@ -0,0 +1,51 @@
+package app.cloudgame.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps scripts in memory instead of running them, for tests and benchmarks. Callbacks get a
+ * {@code null} result right away. With {@code keepScripts} off only the totals are kept, which does
+ * not allocate.
+ */
+public final class RecordingScriptSink implements ScriptSink {
+
+    private final boolean mKeepScripts;
+    private final List<String> mScripts = new ArrayList<>();
+    private long mScriptCount;
+    private long mByteCount;
+
+    public RecordingScriptSink(boolean keepScripts) {
+        mKeepScripts = keepScripts;
+    }
+
+    @Override
+    public void evaluate(String script, ResultCallback callback) {
+        mScriptCount++;
+        mByteCount += script.length();
+        if (mKeepScripts) {
+            mScripts.add(script);
+        }
+        if (callback != null) {
+            callback.onResult(null);
+        }
+    }
+
+    public List<String> getScripts() {
+        return mScripts;
+    }
+
+    public long getScriptCount() {
+        return mScriptCount;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    public void clear() {
+        mScripts.clear();
+        mScriptCount = 0;
+        mByteCount = 0;
+    }
+}
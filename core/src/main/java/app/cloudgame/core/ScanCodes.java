@@ -0,0 +1,46 @@
+package app.cloudgame.core;
+
+/**
+ * Linux input scan codes of the keys on a regular keyboard, by Android key code, as in the platform's
+ * Generic.kl. Chromium takes a key event's DOM {@code code} from its scan code, so a remapped or
+ * synthesized key needs the scan code of the key it pretends to be.
+ */
+public final class ScanCodes {
+
+    private static final int[] TABLE = new int[KeyMap.TABLE_SIZE];
+
+    static {
+        // {Android key code, scan code}
+        int[][] pairs = {
+                {111, 1}, // ESCAPE
+                {8, 2}, {9, 3}, {10, 4}, {11, 5}, {12, 6}, {13, 7}, {14, 8}, {15, 9}, {16, 10}, {7, 11}, // 1..9, 0
+                {69, 12}, {70, 13}, {67, 14}, {61, 15}, // MINUS, EQUALS, DEL, TAB
+                {45, 16}, {51, 17}, {33, 18}, {46, 19}, {48, 20}, {53, 21}, {49, 22}, {37, 23}, {43, 24}, {44, 25}, // Q..P
+                {71, 26}, {72, 27}, {66, 28}, {113, 29}, // LEFT_BRACKET, RIGHT_BRACKET, ENTER, CTRL_LEFT
+                {29, 30}, {47, 31}, {32, 32}, {34, 33}, {35, 34}, {36, 35}, {38, 36}, {39, 37}, {40, 38}, // A..L
+                {74, 39}, {75, 40}, {68, 41}, {59, 42}, {73, 43}, // SEMICOLON, APOSTROPHE, GRAVE, SHIFT_LEFT, BACKSLASH
+                {54, 44}, {52, 45}, {31, 46}, {50, 47}, {30, 48}, {42, 49}, {41, 50}, // Z..M
+                {55, 51}, {56, 52}, {76, 53}, {60, 54}, // COMMA, PERIOD, SLASH, SHIFT_RIGHT
+                {57, 56}, {62, 57}, {115, 58}, // ALT_LEFT, SPACE, CAPS_LOCK
+                {131, 59}, {132, 60}, {133, 61}, {134, 62}, {135, 63}, {136, 64}, {137, 65}, {138, 66}, {139, 67}, {140, 68}, // F1..F10
+                {141, 87}, {142, 88}, // F11, F12
+                {114, 97}, {58, 100}, // CTRL_RIGHT, ALT_RIGHT
+                {122, 102}, {19, 103}, {92, 104}, {21, 105}, {22, 106}, {123, 107}, {20, 108}, {93, 109}, // HOME, UP, PAGE_UP, LEFT, RIGHT, END, DOWN, PAGE_DOWN
+                {124, 110}, {112, 111}, // INSERT, FORWARD_DEL
+                {117, 125}, {118, 126}, // META_LEFT, META_RIGHT
+        };
+        for (int[] pair : pairs) {
+            TABLE[pair[0]] = pair[1];
+        }
+    }
+
+    private ScanCodes() {
+    }
+
+    /**
+     * @return 0 for keys not in the table
+     */
+    public static int of(int keyCode) {
+        return keyCode >= 0 && keyCode < TABLE.length ? TABLE[keyCode] : 0;
+    }
+}
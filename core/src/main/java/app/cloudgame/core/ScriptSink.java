@@ -0,0 +1,21 @@
+package app.cloudgame.core;
+
+/**
+ * Where scripts bound for the game page end up: a WebView on the device, memory in tests and
+ * benchmarks. Called on the main thread.
+ */
+public interface ScriptSink {
+
+    interface ResultCallback {
+        void onResult(String value);
+    }
+
+    /**
+     * @param callback receives the script's result once the page ran it, may be null
+     */
+    void evaluate(String script, ResultCallback callback);
+
+    default void evaluate(String script) {
+        evaluate(script, null);
+    }
+}
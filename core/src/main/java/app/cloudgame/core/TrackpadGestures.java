@@ -0,0 +1,190 @@
+package app.cloudgame.core;
+
+/**
+ * Reads touch pointers as a laptop trackpad: one finger dragging moves the pointer, two fingers
+ * dragging scroll, a quick one or two finger tap clicks the primary or secondary button. Fingers
+ * landing on an on-screen button press that button for as long as they stay down and take no part in
+ * gestures, so a thumb can hold a button while another finger aims.
+ * <p>
+ * Pointers live in fixed slots, nothing is allocated per event. Not thread safe.
+ */
+public final class TrackpadGestures {
+
+    public interface Output {
+        /**
+         * One movement sample, called for each sample of an event before {@link #onMoveEnd}.
+         */
+        void onMove(float dx, float dy);
+
+        void onMoveEnd();
+
+        /**
+         * @param button DOM button number
+         */
+        void onButton(int button, boolean down);
+
+        /**
+         * Scroll in pixels, positive scrolls right and down.
+         */
+        void onWheel(float dx, float dy);
+    }
+
+    public interface ButtonArea {
+        /**
+         * @return the DOM button under the point, -1 for none
+         */
+        int buttonAt(float x, float y);
+    }
+
+    public static final int MAX_POINTERS = 10;
+    public static final long TAP_TIMEOUT_MS = 200;
+
+    private static final int FREE = -1;
+
+    private final Output mOutput;
+    private final ButtonArea mButtons;
+    private final float mTapSlopSquare;
+
+    private final int[] mIds = new int[MAX_POINTERS];
+    // overlay button held by the pointer, FREE when it is a gesture finger
+    private final int[] mButtonOf = new int[MAX_POINTERS];
+    private final float[] mDownX = new float[MAX_POINTERS];
+    private final float[] mDownY = new float[MAX_POINTERS];
+    private final float[] mX = new float[MAX_POINTERS];
+    private final float[] mY = new float[MAX_POINTERS];
+
+    private int mFingers;
+    // gesture state, from the first finger down until the last one up
+    private int mMaxFingers;
+    private long mGestureStart;
+    private boolean mTapCancelled;
+    private boolean mMoved;
+    private float mWheelX;
+    private float mWheelY;
+
+    /**
+     * @param tapSlop distance a finger may travel and still tap, in the same units as the coordinates
+     */
+    public TrackpadGestures(Output output, ButtonArea buttons, float tapSlop) {
+        mOutput = output;
+        mButtons = buttons;
+        mTapSlopSquare = tapSlop * tapSlop;
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            mIds[i] = FREE;
+        }
+    }
+
+    public void down(int id, float x, float y, long time) {
+        int slot = slotOf(FREE);
+        if (slot < 0) {
+            return;
+        }
+        int button = mButtons == null ? -1 : mButtons.buttonAt(x, y);
+        mIds[slot] = id;
+        mButtonOf[slot] = button >= 0 ? button : FREE;
+        if (button >= 0) {
+            mOutput.onButton(button, true);
+            return;
+        }
+        mDownX[slot] = x;
+        mDownY[slot] = y;
+        mX[slot] = x;
+        mY[slot] = y;
+        if (mFingers == 0) {
+            mGestureStart = time;
+            mMaxFingers = 0;
+            mTapCancelled = false;
+        }
+        mFingers++;
+        mMaxFingers = Math.max(mMaxFingers, mFingers);
+    }
+
+    /**
+     * One sample of one pointer; call {@link #endMove} once all pointers of an event are fed.
+     */
+    public void move(int id, float x, float y) {
+        int slot = slotOf(id);
+        if (slot < 0 || mButtonOf[slot] != FREE) {
+            return;
+        }
+        float dx = x - mX[slot];
+        float dy = y - mY[slot];
+        mX[slot] = x;
+        mY[slot] = y;
+        if (!mTapCancelled) {
+            float tx = x - mDownX[slot];
+            float ty = y - mDownY[slot];
+            mTapCancelled = tx * tx + ty * ty > mTapSlopSquare;
+        }
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        if (mFingers == 1) {
+            mMoved = true;
+            mOutput.onMove(dx, dy);
+        } else if (mFingers == 2) {
+            // content follows the fingers, so dragging down scrolls up
+            mWheelX -= dx / 2;
+            mWheelY -= dy / 2;
+        }
+    }
+
+    public void endMove() {
+        if (mMoved) {
+            mMoved = false;
+            mOutput.onMoveEnd();
+        }
+        if (mWheelX != 0 || mWheelY != 0) {
+            mOutput.onWheel(mWheelX, mWheelY);
+            mWheelX = 0;
+            mWheelY = 0;
+        }
+    }
+
+    public void up(int id, long time) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return;
+        }
+        mIds[slot] = FREE;
+        if (mButtonOf[slot] != FREE) {
+            mOutput.onButton(mButtonOf[slot], false);
+            return;
+        }
+        mFingers--;
+        if (mFingers == 0 && !mTapCancelled && mMaxFingers <= 2 && time - mGestureStart <= TAP_TIMEOUT_MS) {
+            int button = mMaxFingers == 1 ? 0 : 2;
+            mOutput.onButton(button, true);
+            mOutput.onButton(button, false);
+        }
+    }
+
+    /**
+     * Forgets every pointer, releasing the buttons they hold. Later samples of those pointers are ignored.
+     */
+    public void cancel() {
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (mIds[slot] != FREE && mButtonOf[slot] != FREE) {
+                mOutput.onButton(mButtonOf[slot], false);
+            }
+            mIds[slot] = FREE;
+        }
+        mFingers = 0;
+        mMoved = false;
+        mWheelX = 0;
+        mWheelY = 0;
+    }
+
+    public int getFingerCount() {
+        return mFingers;
+    }
+
+    private int slotOf(int id) {
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (mIds[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,31 @@
+package app.cloudgame.core;
+
+/**
+ * Release tags look like {@code v0.9.3}.
+ */
+public final class Versions {
+
+    private Versions() {
+    }
+
+    /**
+     * True if {@code newVersion} is later than {@code currentVersion}, comparing the dotted numbers in
+     * order; with equal common parts the longer version wins.
+     *
+     * @throws NumberFormatException if a part is not a number
+     */
+    public static boolean isNewerVersion(String currentVersion, String newVersion) {
+        // -1 keeps trailing empty parts, as Kotlin's split did before this moved here
+        String[] currentParts = currentVersion.replace("v", "").split("\\.", -1);
+        String[] newParts = newVersion.replace("v", "").split("\\.", -1);
+        int common = Math.min(currentParts.length, newParts.length);
+        for (int i = 0; i < common; i++) {
+            int current = Integer.parseInt(currentParts[i]);
+            int next = Integer.parseInt(newParts[i]);
+            if (next != current) {
+                return next > current;
+            }
+        }
+        return newParts.length > currentParts.length;
+    }
+}
@@ -0,0 +1,46 @@
+package app.cloudgame.core;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BridgeScriptTest {
+
+    private final Gson gson = new Gson();
+
+    private String expected(String callbackId, String result) {
+        return "window.CG_EVAL_CALLBACK(" + gson.toJson(callbackId) + ", " + gson.toJson(result) + ")";
+    }
+
+    @Test
+    public void matchesGson() {
+        String[] values = {
+                null, "", "cb_1", "{\"code\": 0, \"msg\": \"ok\"}", "a\\b", "tab\tnew\nline\r",
+                "\b\f\u0000\u001f\u007f", "<script>&='x'</script>", "  ", "中文 ✓ 🎮"
+        };
+        for (String id : values) {
+            for (String result : values) {
+                assertEquals(expected(id, result), BridgeScript.callback(id, result));
+            }
+        }
+    }
+
+    @Test
+    public void randomStringsMatchGson() {
+        Random random = new Random(7);
+        char[] chars = new char[32];
+        for (int i = 0; i < 20_000; i++) {
+            int length = random.nextInt(chars.length);
+            for (int c = 0; c < length; c++) {
+                // mostly ASCII, where all the escapes are, with some of everything else
+                chars[c] = (char) (random.nextInt(4) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80));
+            }
+            String value = new String(chars, 0, length);
+            assertEquals(gson.toJson(value), BridgeScript.appendString(new StringBuilder(), value).toString());
+        }
+    }
+}
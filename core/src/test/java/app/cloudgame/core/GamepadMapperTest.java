@@ -0,0 +1,116 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GamepadMapperTest {
+
+    private static final int[] WASD = {51, 29, 47, 32};
+    private static final int[] ARROWS = {19, 21, 20, 22};
+
+    private final List<String> events = new ArrayList<>();
+    private float movedX;
+    private float movedY;
+
+    private final GamepadMapper mapper = new GamepadMapper(new GamepadMapper.Output() {
+        @Override
+        public void onMove(float dx, float dy) {
+            assertEquals(dx, (int) dx, 0);
+            assertEquals(dy, (int) dy, 0);
+            movedX += dx;
+            movedY += dy;
+        }
+
+        @Override
+        public void onKey(int keyCode, boolean down) {
+            events.add((down ? "+" : "-") + keyCode);
+        }
+
+        @Override
+        public void onMouseButton(int button, boolean down) {
+            events.add((down ? "+b" : "-b") + button);
+        }
+    }, WASD, ARROWS);
+
+    @Test
+    public void deadZoneStopsMovement() {
+        mapper.setRightStick(0.1f, 0.1f);
+        assertFalse(mapper.tick(GamepadMapper.TICK_MS));
+        assertEquals(0, movedX, 0);
+    }
+
+    @Test
+    public void fullDeflectionMovesAtSpeed() {
+        mapper.setSpeed(1000);
+        mapper.setRightStick(1, 0);
+        for (int i = 0; i < GamepadMapper.TICK_HZ; i++) {
+            assertTrue(mapper.tick(GamepadMapper.TICK_MS));
+        }
+        assertEquals(1000, movedX, 1);
+        assertEquals(0, movedY, 0);
+    }
+
+    @Test
+    public void slowAimIsNotLost() {
+        mapper.setSpeed(1000);
+        mapper.setCurve(2);
+        // just past the dead zone a tick moves a fraction of a pixel
+        mapper.setRightStick(0, -0.25f);
+        float deflection = (0.25f - 0.15f) / 0.85f;
+        double expected = deflection * deflection * 1000;
+        for (int i = 0; i < GamepadMapper.TICK_HZ; i++) {
+            mapper.tick(GamepadMapper.TICK_MS);
+        }
+        assertEquals(-expected, movedY, 1);
+        assertTrue(movedY < 0);
+    }
+
+    @Test
+    public void curveFavorsTheCenter() {
+        mapper.setSpeed(1000);
+        mapper.setRightStick(0.575f, 0);
+        mapper.setCurve(1);
+        mapper.tick(1000);
+        float linear = movedX;
+        movedX = 0;
+        mapper.setCurve(3);
+        mapper.tick(1000);
+        assertEquals(500, linear, 1);
+        assertEquals(125, movedX, 1);
+    }
+
+    @Test
+    public void stickPressesKeysWithHysteresis() {
+        mapper.setLeftStick(0, -0.6f);
+        mapper.setLeftStick(0, -0.4f);
+        mapper.setLeftStick(0, -0.55f);
+        mapper.setLeftStick(0.7f, -0.3f);
+        mapper.setLeftStick(0, 0);
+        assertEquals(Arrays.asList("+51", "-51", "+32", "-32"), events);
+    }
+
+    @Test
+    public void triggersPressButtons() {
+        mapper.setTriggers(0, 0.8f);
+        mapper.setTriggers(0.9f, 0.4f);
+        mapper.setTriggers(0.9f, 0.1f);
+        assertEquals(Arrays.asList("+b0", "+b2", "-b0"), events);
+    }
+
+    @Test
+    public void resetReleasesEverything() {
+        mapper.setLeftStick(-1, 1);
+        mapper.setHat(0, -1);
+        mapper.setTriggers(1, 1);
+        events.clear();
+        mapper.reset();
+        assertTrue(events.containsAll(Arrays.asList("-29", "-47", "-19", "-b0", "-b2")));
+        assertEquals(5, events.size());
+        assertFalse(mapper.tick(GamepadMapper.TICK_MS));
+    }
+}
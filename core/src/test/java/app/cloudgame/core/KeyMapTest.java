@@ -0,0 +1,89 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class KeyMapTest {
+
+    // Android key codes of the keys used below
+    private static final Map<String, Integer> CODES = new HashMap<>();
+
+    static {
+        CODES.put("1", 8);
+        CODES.put("Q", 45);
+        CODES.put("W", 51);
+        CODES.put("E", 33);
+        CODES.put("F1", 131);
+        CODES.put("ESCAPE", 111);
+        CODES.put("CAPS_LOCK", 115);
+        CODES.put("SHIFT_LEFT", 59);
+    }
+
+    private static final KeyMap.KeyCodes RESOLVER = name -> CODES.getOrDefault(name, -1);
+
+    @Test
+    public void remapAndSwallow() {
+        KeyMap map = KeyMap.parse("# layout\r\ncaps_lock = ESCAPE\n\n  Q=NONE  # off\n1 = e\n", RESOLVER);
+        assertEquals(111, map.lookup(115));
+        assertEquals(KeyMap.NONE, map.lookup(45));
+        assertEquals(33, map.lookup(8));
+        // unbound keys and codes outside the table map to themselves
+        assertEquals(51, map.lookup(51));
+        assertEquals(KeyMap.TABLE_SIZE + 3, map.lookup(KeyMap.TABLE_SIZE + 3));
+        assertFalse(map.isEmpty());
+    }
+
+    @Test
+    public void macro() {
+        KeyMap map = KeyMap.parse("F1 = +SHIFT_LEFT W 500ms 1", RESOLVER);
+        int mapped = map.lookup(131);
+        assertTrue(KeyMap.isMacro(mapped));
+        KeyMacro macro = map.getMacro(mapped);
+        int[][] expected = {
+                {KeyMacro.PRESS, 59},
+                {KeyMacro.PRESS, 51}, {KeyMacro.WAIT, KeyMap.TAP_HOLD_MS}, {KeyMacro.RELEASE, 51},
+                {KeyMacro.WAIT, 500},
+                {KeyMacro.PRESS, 8}, {KeyMacro.WAIT, KeyMap.TAP_HOLD_MS}, {KeyMacro.RELEASE, 8},
+                // held keys are released at the end
+                {KeyMacro.RELEASE, 59},
+        };
+        assertEquals(expected.length, macro.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("step " + i, expected[i][0], macro.action(i));
+            assertEquals("step " + i, expected[i][1], macro.value(i));
+        }
+    }
+
+    @Test
+    public void emptySource() {
+        assertTrue(KeyMap.parse("", RESOLVER).isEmpty());
+        assertTrue(KeyMap.parse("# nothing\n", RESOLVER).isEmpty());
+        assertTrue(KeyMap.parse(null, RESOLVER).isEmpty());
+    }
+
+    @Test
+    public void errorsNameTheLine() {
+        assertError("Q = W\nW", "line 2");
+        assertError("Q = W\nQ = E", "line 2: key bound twice");
+        assertError("HYPER = W", "line 1: unknown key HYPER");
+        assertError("NONE = W", "line 1");
+        assertError("Q = +NONE", "line 1");
+        assertError("Q = W 20000ms", "line 1: wait above");
+        assertError("Q = W 5xms", "line 1: bad wait 5xms");
+        assertError("Q =", "line 1: expected a key or macro after =");
+        assertError("W = E\nQ =   # later", "line 2: expected a key or macro after =");
+    }
+
+    private static void assertError(String source, String message) {
+        try {
+            KeyMap.parse(source, RESOLVER);
+            fail(source);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MovementScriptTest {
+
+    private static String format(float x, float y) {
+        return String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%f,%f)", x, y);
+    }
+
+    @Test
+    public void intsMatchFormat() {
+        int[] values = {0, 1, -1, 42, -1000, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int x : values) {
+            for (int y : values) {
+                assertEquals(String.format(Locale.ENGLISH, "window.EVAL_MOVEMENT_CB(%d,%d)", x, y),
+                        MovementScript.encode(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void randomFloatsMatchFormat() {
+        Random random = new Random(41);
+        for (int i = 0; i < 200_000; i++) {
+            float x = (random.nextFloat() - 0.5f) * 4000;
+            float y = (random.nextFloat() - 0.5f) * (i % 2 == 0 ? 2 : 1e7f);
+            assertEquals(format(x, y), MovementScript.encode(x, y));
+        }
+    }
+
+    @Test
+    public void edgeFloatsMatchFormat() {
+        float[] values = {
+                0f, -0f, 1e-9f, -1e-9f, 4.9999e-7f, -5e-7f, 0.5f, -1.5f, 16777217f,
+                1e12f, -1e12f, 9.3e12f, -9.3e12f, 1e20f, Float.MAX_VALUE, -Float.MAX_VALUE,
+                Float.MIN_VALUE, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY
+        };
+        for (float x : values) {
+            assertEquals(Float.toString(x), format(x, 1), MovementScript.encode(x, 1f));
+        }
+    }
+
+    @Test
+    public void samplesAndOps() {
+        StringBuilder sb = new StringBuilder();
+        MovementScript.appendTo(sb, 3, -1);
+        MovementScript.appendSamples(sb, new float[]{1, 2, 2, -3}, 2, 1.f, true);
+        assertEquals("window.EVAL_MOVEMENT_CB(3,-1,[1,2,2,-3])", sb.toString());
+
+        sb.setLength(0);
+        MovementScript.appendOps(sb, new float[]{MovementScript.OP_MOVE, 1.25f, -0f, MovementScript.OP_BUTTON, 2, 1}, 2);
+        assertEquals("window.EVAL_POINTER_CB([0,1.250000,0,1,2,1])", sb.toString());
+    }
+}
@@ -0,0 +1,59 @@
+package app.cloudgame.core;
+
+/**
+ * Stands in for the WebView: keeps totals of the movement scripts it receives without allocating, so it
+ * does not show up in the allocation budget of the code under test.
+ */
+final class MovementTotalsSink implements ScriptSink {
+
+    private static final String PREFIX = "window.EVAL_MOVEMENT_CB(";
+
+    long scripts;
+    long bytes;
+    long coalesced;
+    double sumX;
+    double sumY;
+
+    @Override
+    public void evaluate(String script, ResultCallback callback) {
+        if (!script.startsWith(PREFIX) || script.charAt(script.length() - 1) != ')') {
+            throw new AssertionError("unexpected script " + script);
+        }
+        scripts++;
+        bytes += script.length();
+        int comma = script.indexOf(',', PREFIX.length());
+        // a third argument lists the coalesced samples
+        int end = script.indexOf(',', comma + 1);
+        if (end < 0) {
+            end = script.length() - 1;
+        } else {
+            coalesced++;
+        }
+        sumX += parse(script, PREFIX.length(), comma);
+        sumY += parse(script, comma + 1, end);
+    }
+
+    void reset() {
+        scripts = 0;
+        bytes = 0;
+        coalesced = 0;
+        sumX = 0;
+        sumY = 0;
+    }
+
+    // plain decimal as MovementScript writes it, [start, end)
+    private static double parse(String s, int start, int end) {
+        boolean negative = s.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        double value = 0;
+        for (; i < end && s.charAt(i) != '.'; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        double scale = 0.1;
+        for (i++; i < end; i++) {
+            value += (s.charAt(i) - '0') * scale;
+            scale /= 10;
+        }
+        return negative ? -value : value;
+    }
+}
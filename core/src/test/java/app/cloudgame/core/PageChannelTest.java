@@ -0,0 +1,79 @@
+package app.cloudgame.core;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class PageChannelTest {
+
+    @Test
+    public void scripts() {
+        RecordingScriptSink sink = new RecordingScriptSink(true);
+        PageChannel channel = new PageChannel(sink);
+        channel.movement(3, -4);
+        channel.movement(1.5f, -0.25f);
+        channel.callback("cb_1", "{\"code\": 0}");
+        channel.trimMemory(15);
+        channel.pageSettings(1000, true, 0);
+
+        assertEquals(Arrays.asList(
+                "window.EVAL_MOVEMENT_CB(3,-4)",
+                "window.EVAL_MOVEMENT_CB(1.500000,-0.250000)",
+                "window.CG_EVAL_CALLBACK(\"cb_1\", \"{\\\"code\\\": 0}\")",
+                "window.CG_TRIM_MEMORY && window.CG_TRIM_MEMORY(15)",
+                "window.CG_SET_STATS_INTERVAL && window.CG_SET_STATS_INTERVAL(1000);"
+                        + "window.CG_SET_VIDEO_FRAME_STATS && window.CG_SET_VIDEO_FRAME_STATS(true);"
+                        + "window.CG_SET_VIEWPORT_WIDTH && window.CG_SET_VIEWPORT_WIDTH(0)"
+        ), sink.getScripts());
+
+        long bytes = 0;
+        for (String script : sink.getScripts()) {
+            bytes += script.length();
+        }
+        assertEquals(5, channel.getScriptCount());
+        assertEquals(bytes, channel.getByteCount());
+        assertEquals(bytes, sink.getByteCount());
+    }
+
+    @Test
+    public void singleSettings() {
+        RecordingScriptSink sink = new RecordingScriptSink(true);
+        PageChannel channel = new PageChannel(sink);
+        channel.statsInterval(500);
+        channel.videoFrameStats(false);
+        channel.viewportWidth(960);
+
+        assertEquals(Arrays.asList(
+                "window.CG_SET_STATS_INTERVAL && window.CG_SET_STATS_INTERVAL(500)",
+                "window.CG_SET_VIDEO_FRAME_STATS && window.CG_SET_VIDEO_FRAME_STATS(false)",
+                "window.CG_SET_VIEWPORT_WIDTH && window.CG_SET_VIEWPORT_WIDTH(960)"
+        ), sink.getScripts());
+    }
+
+    @Test
+    public void pointerLockChangeMatchesGson() {
+        // the element id comes from the page, it used to be quoted with Gson
+        Gson gson = new Gson();
+        for (String id : new String[]{"", "game-canvas", "a\"b</script>", " '=&", null}) {
+            RecordingScriptSink sink = new RecordingScriptSink(true);
+            new PageChannel(sink).pointerLockChange(true, id, null);
+            String expected = String.format(Locale.ENGLISH, "window.POINTER_LOCK_CHANGE_CB(%s, %s)", "true", gson.toJson(id));
+            assertEquals(expected, sink.getScripts().get(0));
+        }
+    }
+
+    @Test
+    public void callbackIsForwarded() {
+        RecordingScriptSink sink = new RecordingScriptSink(false);
+        boolean[] called = new boolean[1];
+        new PageChannel(sink).pointerLockChange(false, "x", v -> called[0] = true);
+        assertTrue(called[0]);
+        assertTrue(sink.getScripts().isEmpty());
+        assertEquals(1, sink.getScriptCount());
+    }
+}
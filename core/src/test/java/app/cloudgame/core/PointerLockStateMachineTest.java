@@ -0,0 +1,132 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static app.cloudgame.core.PointerLockStateMachine.State.*;
+import static org.junit.Assert.*;
+
+public class PointerLockStateMachineTest {
+
+    private final List<String> calls = new ArrayList<>();
+    private boolean focused = true;
+
+    private final PointerLockStateMachine lock = new PointerLockStateMachine(new PointerLockStateMachine.Host() {
+        @Override
+        public boolean hasWindowFocus() {
+            return focused;
+        }
+
+        @Override
+        public void requestCapture() {
+            calls.add("request");
+        }
+
+        @Override
+        public void releaseCapture() {
+            calls.add("release");
+        }
+
+        @Override
+        public void onLockChanged(boolean locked, String elementId) {
+            calls.add((locked ? "locked " : "unlocked ") + elementId);
+        }
+    });
+
+    @Test
+    public void requestReportsLatency() {
+        lock.requestLock("7", 100);
+        assertEquals(ACQUIRING, lock.getState());
+        assertEquals(30, lock.onCaptureChanged(true, 130));
+        assertEquals(LOCKED, lock.getState());
+        assertEquals(Arrays.asList("request", "locked 7"), calls);
+    }
+
+    @Test
+    public void repeatedRequestsAreDeduplicated() {
+        assertTrue(lock.requestLock("7", 0));
+        assertFalse(lock.requestLock(null, 10));
+        assertFalse(lock.requestLock(null, 20));
+        assertEquals(Collections.singletonList("request"), calls);
+        // the platform dropped the first one, a late click may ask again
+        assertTrue(lock.requestLock(null, PointerLockStateMachine.REQUEST_TIMEOUT_MS + 1));
+        assertEquals(Arrays.asList("request", "request"), calls);
+        lock.onCaptureChanged(true, PointerLockStateMachine.REQUEST_TIMEOUT_MS + 5);
+        assertFalse(lock.requestLock(null, 2000));
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    public void lockedPageLearnsNewElement() {
+        lock.requestLock("1", 0);
+        lock.onCaptureChanged(true, 5);
+        calls.clear();
+        lock.requestLock("2", 10);
+        assertEquals(Collections.singletonList("locked 2"), calls);
+    }
+
+    @Test
+    public void recapturesWhenFocusReturns() {
+        lock.requestLock("7", 0);
+        lock.onCaptureChanged(true, 5);
+        focused = false;
+        lock.onWindowFocusChanged(false, 100);
+        lock.onCaptureChanged(false, 101);
+        assertEquals(SUSPENDED, lock.getState());
+        calls.clear();
+        focused = true;
+        assertTrue(lock.onWindowFocusChanged(true, 500));
+        assertEquals(16, lock.onCaptureChanged(true, 516));
+        assertEquals(Arrays.asList("request", "locked 7"), calls);
+    }
+
+    @Test
+    public void unfocusedRequestWaitsForFocus() {
+        focused = false;
+        lock.requestLock("7", 0);
+        assertEquals(SUSPENDED, lock.getState());
+        assertTrue(calls.isEmpty());
+        focused = true;
+        lock.onWindowFocusChanged(true, 50);
+        assertEquals(Collections.singletonList("request"), calls);
+    }
+
+    @Test
+    public void focusLostWhileAcquiring() {
+        lock.requestLock("7", 0);
+        focused = false;
+        lock.onWindowFocusChanged(false, 10);
+        assertEquals(SUSPENDED, lock.getState());
+        focused = true;
+        lock.onWindowFocusChanged(true, 20);
+        assertEquals(Arrays.asList("request", "request"), calls);
+    }
+
+    @Test
+    public void restoreOnlyAfterLoss() {
+        assertFalse(lock.restore(0));
+        lock.requestLock("7", 0);
+        lock.onCaptureChanged(true, 5);
+        assertFalse(lock.restore(10));
+        lock.onCaptureChanged(false, 20);
+        assertTrue(lock.restore(30));
+        assertEquals(Arrays.asList("request", "locked 7", "unlocked 7", "request"), calls);
+    }
+
+    @Test
+    public void exitReleasesAndIgnoresLateGrant() {
+        lock.requestLock("7", 0);
+        lock.exitLock();
+        assertEquals(-1, lock.onCaptureChanged(true, 50));
+        assertEquals(UNLOCKED, lock.getState());
+        assertEquals(Arrays.asList("request", "release", "release"), calls);
+        calls.clear();
+        focused = true;
+        lock.onWindowFocusChanged(true, 60);
+        assertTrue(calls.isEmpty());
+    }
+}
@@ -0,0 +1,200 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PointerPipelineTest {
+
+    private final RecordingScriptSink sink = new RecordingScriptSink(true);
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final PointerPipeline pipeline = new PointerPipeline(sink, scheduler);
+
+    @Test
+    public void singleSample() {
+        pipeline.onMove(3.7f, -2.2f);
+        assertEquals(Collections.singletonList("window.EVAL_MOVEMENT_CB(3,-2)"), sink.getScripts());
+    }
+
+    @Test
+    public void historicalSamplesAreCoalesced() {
+        pipeline.addSample(1, 2);
+        pipeline.addSample(3, -4);
+        pipeline.addSample(5, 0);
+        pipeline.endMove();
+        assertEquals(Collections.singletonList("window.EVAL_MOVEMENT_CB(9,-2,[1,2,3,-4,5,0])"), sink.getScripts());
+        assertEquals(1, pipeline.getMoveCount());
+        assertEquals(3, pipeline.getSampleCount());
+    }
+
+    @Test
+    public void endMoveWithoutSamplesSendsNothing() {
+        pipeline.endMove();
+        pipeline.onMove(1, 1);
+        pipeline.endMove();
+        assertEquals(Collections.singletonList("window.EVAL_MOVEMENT_CB(1,1)"), sink.getScripts());
+        assertEquals(1, pipeline.getMoveCount());
+    }
+
+    @Test
+    public void scaledSamples() {
+        pipeline.setSpeed(1.5f);
+        pipeline.addSample(1, 2);
+        pipeline.addSample(-3, 0);
+        pipeline.endMove();
+        assertEquals(Collections.singletonList(
+                "window.EVAL_MOVEMENT_CB(-3.000000,3.000000,[1.500000,3.000000,-4.500000,0.000000])"),
+                sink.getScripts());
+    }
+
+    @Test
+    public void flushCarriesSamplesOfEveryEvent() {
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        pipeline.onMove(2, 1);
+        scheduler.advanceTo(4);
+        pipeline.onMove(3, 1);
+        assertTrue(sink.getScripts().isEmpty());
+        scheduler.advanceTo(8);
+        pipeline.onMove(1, 0);
+        scheduler.advanceTo(16);
+        assertEquals(Arrays.asList(
+                "window.EVAL_MOVEMENT_CB(5,2,[2,1,3,1])",
+                "window.EVAL_MOVEMENT_CB(1,0)"), sink.getScripts());
+    }
+
+    @Test
+    public void samplesAreBounded() {
+        for (int i = 0; i < 1000; i++) {
+            pipeline.addSample(1, 0);
+        }
+        pipeline.endMove();
+        String script = sink.getScripts().get(0);
+        assertTrue(script, script.startsWith("window.EVAL_MOVEMENT_CB(1000,0,[1,0,"));
+        assertTrue(script, script.endsWith(",937,0])"));
+    }
+
+    @Test
+    public void resetDropsPendingMovement() {
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        pipeline.addSample(4, 4);
+        pipeline.addSample(4, 4);
+        pipeline.endMove();
+        pipeline.reset();
+        scheduler.advanceTo(16);
+        pipeline.onMove(1, 1);
+        scheduler.advanceTo(32);
+        assertEquals(Collections.singletonList("window.EVAL_MOVEMENT_CB(1,1)"), sink.getScripts());
+    }
+
+    @Test
+    public void buttonGoesAfterPendingMovement() {
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        pipeline.onMove(2, 1);
+        pipeline.onMove(3, 1);
+        pipeline.button(0, true);
+        pipeline.onMove(1, 0);
+        scheduler.advanceTo(16);
+        assertEquals(Arrays.asList(
+                "window.EVAL_POINTER_CB([0,5,2,1,0,1])",
+                "window.EVAL_MOVEMENT_CB(1,0)"), sink.getScripts());
+        assertEquals(1, pipeline.getOpCount());
+    }
+
+    @Test
+    public void buttonOpStream() {
+        pipeline.onMove(1, 0);
+        pipeline.button(0, true);
+        pipeline.onMove(2, 0);
+        pipeline.button(0, false);
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        pipeline.onMove(0, 3);
+        pipeline.button(2, true);
+        pipeline.button(2, false);
+        pipeline.onMove(1, 1);
+        pipeline.button(1, true);
+        scheduler.advanceTo(16);
+        assertEquals(Arrays.asList(
+                "window.EVAL_MOVEMENT_CB(1,0)",
+                "window.EVAL_POINTER_CB([1,0,1])",
+                "window.EVAL_MOVEMENT_CB(2,0)",
+                "window.EVAL_POINTER_CB([1,0,0])",
+                "window.EVAL_POINTER_CB([0,0,3,1,2,1])",
+                "window.EVAL_POINTER_CB([1,2,0])",
+                "window.EVAL_POINTER_CB([0,1,1,1,1,1])"), sink.getScripts());
+        assertEquals(5, pipeline.getOpCount());
+    }
+
+    @Test
+    public void wheelAccumulatesFractions() {
+        for (int i = 0; i < 7; i++) {
+            pipeline.wheel(0, 0.375f);
+        }
+        // sent as a pixel at 1.125 and 1.25, 0.625 is left over
+        assertEquals(Arrays.asList(
+                "window.EVAL_POINTER_CB([2,0,1])",
+                "window.EVAL_POINTER_CB([2,0,1])"), sink.getScripts());
+        pipeline.wheel(0, -0.5f);
+        assertEquals(2, sink.getScripts().size());
+    }
+
+    @Test
+    public void wheelFollowsTheFlushInterval() {
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        pipeline.onMove(4, 0);
+        pipeline.wheel(0, 3);
+        pipeline.onMove(0, 2);
+        pipeline.wheel(0, 3);
+        pipeline.button(2, false);
+        assertEquals(Collections.singletonList(
+                "window.EVAL_POINTER_CB([0,4,0,2,0,3,0,0,2,2,0,3,1,2,0])"), sink.getScripts());
+        scheduler.advanceTo(16);
+        assertEquals(1, sink.getScripts().size());
+    }
+
+    @Test
+    public void scaledMovementOpsKeepFractions() {
+        pipeline.setSpeed(1.5f);
+        pipeline.onMove(1, 0);
+        pipeline.button(0, true);
+        pipeline.setFlushInterval(8);
+        pipeline.onMove(1, 1);
+        pipeline.button(0, false);
+        assertEquals(Arrays.asList(
+                "window.EVAL_MOVEMENT_CB(1.500000,0.000000)",
+                "window.EVAL_POINTER_CB([1,0,1])",
+                "window.EVAL_POINTER_CB([0,1.500000,1.500000,1,0,0])"), sink.getScripts());
+    }
+
+    @Test
+    public void manyOpsAreSplitInOrder() {
+        for (int i = 0; i < 40; i++) {
+            pipeline.button(0, i % 2 == 0);
+        }
+        assertEquals(40, sink.getScripts().size());
+        scheduler.reset(0);
+        pipeline.setFlushInterval(8);
+        sink.clear();
+        for (int i = 0; i < 40; i++) {
+            pipeline.wheel(1, 0);
+        }
+        scheduler.advanceTo(8);
+        assertEquals(2, sink.getScripts().size());
+        assertEquals("window.EVAL_POINTER_CB([2,1,0,2,1,0,2,1,0,2,1,0,2,1,0,2,1,0,2,1,0,2,1,0])", sink.getScripts().get(1));
+    }
+
+    @Test
+    public void resetDropsWheelRemainder() {
+        pipeline.wheel(0.75f, 0);
+        pipeline.reset();
+        pipeline.wheel(0.75f, 0);
+        assertTrue(sink.getScripts().isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package app.cloudgame.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Replays a pointer trace through {@link PointerPipeline} the way {@code WebContainer} feeds it, with
+ * the trace decoded up front so only the pipeline is measured.
+ */
+final class PointerReplay {
+
+    // MotionEvent.ACTION_MOVE and ACTION_HOVER_MOVE
+    static final int ACTION_MOVE = 2;
+    static final int ACTION_HOVER_MOVE = 7;
+
+    static final class Result {
+        long events;
+        long moves;
+        long samples;
+        long scripts;
+        long coalescedScripts;
+        long scriptBytes;
+        double inputX;
+        double inputY;
+        double sentX;
+        double sentY;
+        long durationMs;
+        // -1 when the JVM can not measure it
+        long allocatedBytes = -1;
+        long cpuNanos = -1;
+    }
+
+    private final long[] mTimes;
+    private final int[] mActions;
+    // samples of event i are [mSampleEnd[i - 1], mSampleEnd[i])
+    private final int[] mSampleEnd;
+    private final float[] mXs;
+    private final float[] mYs;
+    private final int mCount;
+
+    private PointerReplay(long[] times, int[] actions, int[] sampleEnd, float[] xs, float[] ys, int count) {
+        mTimes = times;
+        mActions = actions;
+        mSampleEnd = sampleEnd;
+        mXs = xs;
+        mYs = ys;
+        mCount = count;
+    }
+
+    static PointerReplay load(byte[] trace) throws IOException {
+        return load(new ByteArrayInputStream(trace));
+    }
+
+    static PointerReplay load(InputStream in) throws IOException {
+        long[] times = new long[1024];
+        int[] actions = new int[1024];
+        int[] sampleEnd = new int[1024];
+        float[] xs = new float[1024];
+        float[] ys = new float[1024];
+        int count = 0;
+        int samples = 0;
+        PointerRecord record = new PointerRecord();
+        try (PointerTraceReader reader = new PointerTraceReader(in)) {
+            while (reader.next(record)) {
+                if (record.sampleCount == 0) {
+                    continue;
+                }
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    actions = Arrays.copyOf(actions, count * 2);
+                    sampleEnd = Arrays.copyOf(sampleEnd, count * 2);
+                }
+                while (samples + record.sampleCount > xs.length) {
+                    xs = Arrays.copyOf(xs, xs.length * 2);
+                    ys = Arrays.copyOf(ys, ys.length * 2);
+                }
+                System.arraycopy(record.xs, 0, xs, samples, record.sampleCount);
+                System.arraycopy(record.ys, 0, ys, samples, record.sampleCount);
+                samples += record.sampleCount;
+                times[count] = record.eventTime();
+                actions[count] = record.action;
+                sampleEnd[count] = samples;
+                count++;
+            }
+        }
+        return new PointerReplay(times, actions, sampleEnd, xs, ys, count);
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    Result run(float speed, int flushIntervalMs) {
+        MovementTotalsSink sink = new MovementTotalsSink();
+        PageChannel channel = new PageChannel(sink);
+        VirtualScheduler scheduler = new VirtualScheduler();
+        PointerPipeline pipeline = new PointerPipeline(channel, scheduler);
+        pipeline.setSpeed(speed);
+        pipeline.setFlushInterval(flushIntervalMs);
+        Result result = new Result();
+        if (mCount == 0) {
+            return result;
+        }
+        scheduler.reset(mTimes[0]);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+        boolean measureAllocation = allocation != null && allocation.isThreadAllocatedMemorySupported()
+                && allocation.isThreadAllocatedMemoryEnabled();
+        boolean measureCpu = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+        long allocatedBefore = measureAllocation ? allocation.getThreadAllocatedBytes(threadId) : 0;
+        long cpuBefore = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+
+        double inputX = 0;
+        double inputY = 0;
+        for (int i = 0; i < mCount; i++) {
+            scheduler.advanceTo(mTimes[i]);
+            int action = mActions[i];
+            if (action == ACTION_MOVE || action == ACTION_HOVER_MOVE) {
+                // like WebContainer, historical samples first
+                for (int k = i == 0 ? 0 : mSampleEnd[i - 1]; k < mSampleEnd[i]; k++) {
+                    inputX += mXs[k];
+                    inputY += mYs[k];
+                    pipeline.addSample(mXs[k], mYs[k]);
+                }
+                pipeline.endMove();
+            }
+        }
+        // lets the last pending flush run
+        scheduler.advanceTo(mTimes[mCount - 1] + flushIntervalMs);
+
+        if (measureCpu) {
+            result.cpuNanos = threads.getCurrentThreadCpuTime() - cpuBefore;
+        }
+        if (measureAllocation) {
+            result.allocatedBytes = allocation.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        result.events = mCount;
+        result.moves = pipeline.getMoveCount();
+        result.samples = pipeline.getSampleCount();
+        result.coalescedScripts = sink.coalesced;
+        result.scripts = pipeline.getScriptCount();
+        result.scriptBytes = channel.getByteCount();
+        result.inputX = inputX;
+        result.inputY = inputY;
+        result.sentX = sink.sumX;
+        result.sentY = sink.sumY;
+        result.durationMs = mTimes[mCount - 1] - mTimes[0];
+        if (sink.scripts != result.scripts || channel.getScriptCount() != result.scripts) {
+            throw new AssertionError("pipeline counted " + result.scripts + " scripts, channel "
+                    + channel.getScriptCount() + ", sink " + sink.scripts);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package app.cloudgame.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Replays pointer traces through {@link PointerPipeline}. Besides the synthetic sessions, every trace
+ * recorded on a device (settings, Record Mouse Input) and copied to {@code src/test/resources/traces}
+ * is replayed too.
+ * <p>
+ * The CPU and allocation budgets depend on the machine, they only run with {@code -Dcg.budgets=true}
+ * ({@code ./gradlew :core:test -Pbudgets}).
+ */
+public class PointerReplayTest {
+
+    // one movement script per event costs about 100 bytes
+    private static final long ALLOCATION_BUDGET_PER_EVENT = 256;
+    private static final long CPU_BUDGET_NS_PER_EVENT = 20_000;
+    private static final int WARMUP_RUNS = 5;
+    private static final String BUDGETS_PROPERTY = "cg.budgets";
+
+    private static final Map<String, PointerReplay> sTraces = new LinkedHashMap<>();
+
+    @BeforeClass
+    public static void loadTraces() throws IOException, URISyntaxException {
+        sTraces.put("synthetic", PointerReplay.load(SyntheticTraces.session(42, 30, false)));
+        sTraces.put("synthetic-fractional", PointerReplay.load(SyntheticTraces.session(7, 30, true)));
+        URL dir = PointerReplayTest.class.getClassLoader().getResource("traces");
+        if (dir == null || !"file".equals(dir.getProtocol())) {
+            return;
+        }
+        File[] files = new File(dir.toURI()).listFiles((d, name) -> name.endsWith(".cgpr"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try (InputStream in = new FileInputStream(file)) {
+                sTraces.put(file.getName(), PointerReplay.load(in));
+            }
+        }
+    }
+
+    @Test
+    public void perEventDeliveryKeepsWholePixels() {
+        for (Map.Entry<String, PointerReplay> trace : sTraces.entrySet()) {
+            PointerReplay.Result result = trace.getValue().run(1.f, 0);
+            String name = trace.getKey();
+            assertEquals(name, result.moves, result.scripts);
+            assertTrue(name, result.samples >= result.moves);
+            // fractions are dropped per event, never more than one pixel each
+            assertEquals(name, result.inputX, result.sentX, result.moves);
+            assertEquals(name, result.inputY, result.sentY, result.moves);
+        }
+    }
+
+    @Test
+    public void batchingKeepsDisplacement() {
+        for (Map.Entry<String, PointerReplay> trace : sTraces.entrySet()) {
+            for (int interval : new int[]{4, 8, 16}) {
+                PointerReplay.Result result = trace.getValue().run(1.f, interval);
+                String name = trace.getKey() + " @" + interval + "ms";
+                // the remainder carries over, so at most the last fraction is held back
+                assertEquals(name, result.inputX, result.sentX, 1);
+                assertEquals(name, result.inputY, result.sentY, 1);
+                assertTrue(name + ": " + result.scripts + " flushes", result.scripts <= result.moves);
+                assertTrue(name + ": " + result.scripts + " flushes in " + result.durationMs + "ms",
+                        result.scripts <= result.durationMs / interval + 1);
+            }
+        }
+    }
+
+    @Test
+    public void scaledMovement() {
+        for (Map.Entry<String, PointerReplay> trace : sTraces.entrySet()) {
+            for (int interval : new int[]{0, 8}) {
+                PointerReplay.Result result = trace.getValue().run(1.5f, interval);
+                String name = trace.getKey() + " @" + interval + "ms";
+                // six fraction digits per script
+                double tolerance = 1e-3 * result.scripts + 1e-6 * Math.abs(result.inputX + result.inputY);
+                assertEquals(name, result.inputX * 1.5, result.sentX, tolerance);
+                assertEquals(name, result.inputY * 1.5, result.sentY, tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void allocationBudget() {
+        assumeTrue("budgets off", Boolean.getBoolean(BUDGETS_PROPERTY));
+        for (Map.Entry<String, PointerReplay> trace : sTraces.entrySet()) {
+            for (int interval : new int[]{0, 8}) {
+                PointerReplay.Result result = measured(trace.getValue(), interval);
+                assumeTrue("thread allocation counting unsupported", result.allocatedBytes >= 0);
+                long perEvent = result.allocatedBytes / Math.max(1, result.events);
+                assertTrue(trace.getKey() + " @" + interval + "ms allocates " + perEvent + " bytes per event",
+                        perEvent <= ALLOCATION_BUDGET_PER_EVENT);
+            }
+        }
+    }
+
+    @Test
+    public void cpuBudget() {
+        assumeTrue("budgets off", Boolean.getBoolean(BUDGETS_PROPERTY));
+        for (Map.Entry<String, PointerReplay> trace : sTraces.entrySet()) {
+            for (int interval : new int[]{0, 8}) {
+                PointerReplay.Result result = measured(trace.getValue(), interval);
+                assumeTrue("thread CPU time unsupported", result.cpuNanos >= 0);
+                long perEvent = result.cpuNanos / Math.max(1, result.events);
+                assertTrue(trace.getKey() + " @" + interval + "ms takes " + perEvent + " ns per event",
+                        perEvent <= CPU_BUDGET_NS_PER_EVENT);
+            }
+        }
+    }
+
+    // budgets hold for compiled code, the first runs go to the JIT
+    private static PointerReplay.Result measured(PointerReplay replay, int interval) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            replay.run(1.f, interval);
+        }
+        return replay.run(1.f, interval);
+    }
+}
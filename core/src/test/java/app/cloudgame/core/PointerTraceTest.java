@@ -0,0 +1,76 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class PointerTraceTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointerRecord record = new PointerRecord();
+        try (PointerTraceWriter writer = new PointerTraceWriter(out, 1234L)) {
+            record.clear(PointerReplay.ACTION_MOVE, 0);
+            record.addSample(5_000_000_000L, 1.5f, -2f);
+            writer.write(record);
+
+            record.clear(PointerReplay.ACTION_MOVE, 1);
+            for (int i = 0; i < 20; i++) {
+                record.addSample(5_000_000_001L + i, i, -i);
+            }
+            writer.write(record);
+
+            // out of order time stamps have happened with some input drivers
+            record.clear(SyntheticTraces.ACTION_BUTTON_PRESS, 0x80000001);
+            record.addSample(4_999_999_990L, 0, 0);
+            writer.write(record);
+        }
+
+        PointerRecord read = new PointerRecord();
+        try (PointerTraceReader reader = new PointerTraceReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(1234L, reader.getStartWallTime());
+
+            assertTrue(reader.next(read));
+            assertEquals(PointerReplay.ACTION_MOVE, read.action);
+            assertEquals(1, read.sampleCount);
+            assertEquals(5_000_000_000L, read.eventTime());
+            assertEquals(1.5f, read.xs[0], 0);
+            assertEquals(-2f, read.ys[0], 0);
+
+            assertTrue(reader.next(read));
+            assertEquals(1, read.buttonState);
+            assertEquals(20, read.sampleCount);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(5_000_000_001L + i, read.times[i]);
+                assertEquals(i, read.xs[i], 0);
+                assertEquals(-i, read.ys[i], 0);
+            }
+
+            assertTrue(reader.next(read));
+            assertEquals(SyntheticTraces.ACTION_BUTTON_PRESS, read.action);
+            assertEquals(0x80000001, read.buttonState);
+            assertEquals(4_999_999_990L, read.eventTime());
+
+            assertFalse(reader.next(read));
+        }
+    }
+
+    @Test
+    public void compact() throws IOException {
+        byte[] trace = SyntheticTraces.session(1, 10, false);
+        PointerReplay replay = PointerReplay.load(trace);
+        // time delta, action, buttons and count fit a byte each at 1 kHz
+        assertTrue(trace.length + " bytes for " + replay.size() + " events",
+                trace.length < replay.size() * 13L + 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new PointerTraceReader(new ByteArrayInputStream("{\"type\":\"session\"}".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,67 @@
+package app.cloudgame.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates pointer traces shaped like a captured gaming mouse session: steady 1 kHz reports with
+ * idle gaps, fast flicks, slow aim, button presses and the occasional batched event.
+ */
+final class SyntheticTraces {
+
+    // MotionEvent.ACTION_BUTTON_PRESS and ACTION_BUTTON_RELEASE
+    static final int ACTION_BUTTON_PRESS = 11;
+    static final int ACTION_BUTTON_RELEASE = 12;
+
+    private SyntheticTraces() {
+    }
+
+    static byte[] session(long seed, int seconds, boolean fractional) throws IOException {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointerRecord record = new PointerRecord();
+        try (PointerTraceWriter writer = new PointerTraceWriter(out, 1_700_000_000_000L)) {
+            long time = 100_000;
+            long end = time + seconds * 1000L;
+            boolean pressed = false;
+            while (time < end) {
+                int phase = random.nextInt(10);
+                if (phase == 0) {
+                    // idle
+                    time += 50 + random.nextInt(400);
+                    continue;
+                }
+                // a flick is short and fast, aim long and slow
+                boolean flick = phase < 3;
+                int length = flick ? 30 + random.nextInt(80) : 200 + random.nextInt(800);
+                double speed = flick ? 20 + random.nextDouble() * 60 : 0.3 + random.nextDouble() * 3;
+                double angle = random.nextDouble() * Math.PI * 2;
+                for (int i = 0; i < length && time < end; i++) {
+                    angle += random.nextGaussian() * 0.05;
+                    record.clear(PointerReplay.ACTION_MOVE, pressed ? 1 : 0);
+                    // a slow main thread delivers a few reports in one event
+                    int samples = random.nextInt(50) == 0 ? 2 + random.nextInt(4) : 1;
+                    for (int s = 0; s < samples; s++) {
+                        float dx = (float) (Math.cos(angle) * speed);
+                        float dy = (float) (Math.sin(angle) * speed);
+                        if (!fractional) {
+                            dx = Math.round(dx);
+                            dy = Math.round(dy);
+                        }
+                        record.addSample(time, dx, dy);
+                        time += 1;
+                    }
+                    writer.write(record);
+                    if (random.nextInt(500) == 0) {
+                        pressed = !pressed;
+                        record.clear(pressed ? ACTION_BUTTON_PRESS : ACTION_BUTTON_RELEASE, pressed ? 1 : 0);
+                        record.addSample(time, 0, 0);
+                        writer.write(record);
+                    }
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+}
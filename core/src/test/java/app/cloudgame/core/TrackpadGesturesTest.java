@@ -0,0 +1,132 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrackpadGesturesTest {
+
+    private final List<String> events = new ArrayList<>();
+    private float movedX;
+    private float movedY;
+    private int moveEnds;
+
+    private final TrackpadGestures gestures = new TrackpadGestures(new TrackpadGestures.Output() {
+        @Override
+        public void onMove(float dx, float dy) {
+            movedX += dx;
+            movedY += dy;
+        }
+
+        @Override
+        public void onMoveEnd() {
+            moveEnds++;
+        }
+
+        @Override
+        public void onButton(int button, boolean down) {
+            events.add((down ? "+" : "-") + button);
+        }
+
+        @Override
+        public void onWheel(float dx, float dy) {
+            events.add("wheel " + dx + "," + dy);
+        }
+    }, (x, y) -> y > 900 ? (x < 100 ? 0 : x > 1800 ? 2 : -1) : -1, 10);
+
+    @Test
+    public void oneFingerDragMoves() {
+        gestures.down(0, 500, 500, 0);
+        gestures.move(0, 510, 495);
+        gestures.move(0, 530, 490);
+        gestures.endMove();
+        gestures.up(0, 300);
+        assertEquals(30, movedX, 0);
+        assertEquals(-10, movedY, 0);
+        assertEquals(1, moveEnds);
+        assertEquals(Collections.emptyList(), events);
+    }
+
+    @Test
+    public void tapClicks() {
+        gestures.down(3, 500, 500, 0);
+        gestures.move(3, 503, 502);
+        gestures.endMove();
+        gestures.up(3, 100);
+        assertEquals(Arrays.asList("+0", "-0"), events);
+    }
+
+    @Test
+    public void slowOrTravellingTouchDoesNotClick() {
+        gestures.down(0, 500, 500, 0);
+        gestures.up(0, TrackpadGestures.TAP_TIMEOUT_MS + 1);
+        gestures.down(0, 500, 500, 1000);
+        gestures.move(0, 520, 500);
+        gestures.move(0, 500, 500);
+        gestures.endMove();
+        gestures.up(0, 1050);
+        assertEquals(Collections.emptyList(), events);
+    }
+
+    @Test
+    public void twoFingerTapIsSecondaryClick() {
+        gestures.down(0, 500, 500, 0);
+        gestures.down(1, 600, 500, 20);
+        gestures.up(1, 90);
+        gestures.up(0, 100);
+        assertEquals(Arrays.asList("+2", "-2"), events);
+    }
+
+    @Test
+    public void twoFingerDragScrolls() {
+        gestures.down(0, 500, 500, 0);
+        gestures.down(1, 600, 500, 0);
+        gestures.move(0, 500, 540);
+        gestures.move(1, 600, 540);
+        gestures.endMove();
+        gestures.up(0, 500);
+        gestures.up(1, 500);
+        assertEquals(0, movedY, 0);
+        assertEquals(Collections.singletonList("wheel 0.0,-40.0"), events);
+    }
+
+    @Test
+    public void addingAFingerDoesNotJump() {
+        gestures.down(0, 500, 500, 0);
+        gestures.move(0, 505, 500);
+        gestures.down(1, 900, 100, 10);
+        gestures.up(0, 20);
+        // the finger left on the pad carries on from where it went down
+        gestures.move(1, 910, 100);
+        gestures.endMove();
+        assertEquals(15, movedX, 0);
+    }
+
+    @Test
+    public void buttonFingerHoldsAndAimsWithAnother() {
+        gestures.down(0, 50, 950, 0);
+        gestures.down(1, 500, 500, 0);
+        gestures.move(1, 540, 500);
+        gestures.move(0, 80, 950);
+        gestures.endMove();
+        gestures.up(1, 50);
+        gestures.up(0, 60);
+        assertEquals(40, movedX, 0);
+        assertEquals(Arrays.asList("+0", "-0"), events);
+    }
+
+    @Test
+    public void cancelReleasesButtons() {
+        gestures.down(0, 1900, 950, 0);
+        gestures.down(1, 500, 500, 0);
+        gestures.cancel();
+        gestures.up(1, 10);
+        assertEquals(Arrays.asList("+2", "-2"), events);
+        assertEquals(0, gestures.getFingerCount());
+    }
+}
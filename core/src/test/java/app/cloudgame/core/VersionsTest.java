@@ -0,0 +1,31 @@
+package app.cloudgame.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VersionsTest {
+
+    @Test
+    public void comparesPartsInOrder() {
+        assertTrue(Versions.isNewerVersion("v0.9.3", "v0.9.4"));
+        assertTrue(Versions.isNewerVersion("v0.9.3", "v0.10.0"));
+        assertTrue(Versions.isNewerVersion("v0.9.3", "v1.0"));
+        assertFalse(Versions.isNewerVersion("v0.9.3", "v0.9.3"));
+        assertFalse(Versions.isNewerVersion("v0.10.0", "v0.9.9"));
+        assertTrue(Versions.isNewerVersion("0.9", "v0.9.1"));
+        assertFalse(Versions.isNewerVersion("v0.9.1", "v0.9"));
+    }
+
+    @Test
+    public void trailingEmptyPartsCount() {
+        // Kotlin's split kept them, a tag with a trailing dot is one part longer
+        assertTrue(Versions.isNewerVersion("v0.9", "v0.9."));
+        assertFalse(Versions.isNewerVersion("v0.9.", "v0.9"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void emptyPartInTheMiddle() {
+        Versions.isNewerVersion("v0..1", "v0.9.1");
+    }
+}
@@ -0,0 +1,69 @@
+package app.cloudgame.core;
+
+/**
+ * Runs delayed tasks against replayed event time instead of a looper. Holds a fixed number of tasks so
+ * scheduling does not allocate.
+ */
+final class VirtualScheduler implements PointerPipeline.Scheduler {
+
+    private final Runnable[] mTasks = new Runnable[8];
+    private final long[] mDueTimes = new long[8];
+    private int mCount;
+    private long mNow;
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        if (mCount == mTasks.length) {
+            throw new IllegalStateException("too many pending tasks");
+        }
+        mTasks[mCount] = task;
+        mDueTimes[mCount] = mNow + delayMs;
+        mCount++;
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            if (mTasks[i] == task) {
+                remove(i);
+            }
+        }
+    }
+
+    void reset(long now) {
+        mNow = now;
+        for (int i = 0; i < mCount; i++) {
+            mTasks[i] = null;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Moves the clock to {@code now}, running every task due by then in due order.
+     */
+    void advanceTo(long now) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < mCount; i++) {
+                if (mDueTimes[i] <= now && (next < 0 || mDueTimes[i] < mDueTimes[next])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            Runnable task = mTasks[next];
+            mNow = Math.max(mNow, mDueTimes[next]);
+            remove(next);
+            task.run();
+        }
+        mNow = Math.max(mNow, now);
+    }
+
+    private void remove(int index) {
+        mCount--;
+        System.arraycopy(mTasks, index + 1, mTasks, index, mCount - index);
+        System.arraycopy(mDueTimes, index + 1, mDueTimes, index, mCount - index);
+        mTasks[mCount] = null;
+    }
+}